@@ -1,55 +1,405 @@
 package com.uma.example.springuma.controller;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.uma.example.springuma.model.Imagen;
+import com.uma.example.springuma.model.ImagenInfo;
 import com.uma.example.springuma.model.ImagenService;
+import com.uma.example.springuma.model.LotePrediccion;
+import com.uma.example.springuma.model.MiniaturaService;
 import com.uma.example.springuma.model.Paciente;
+import com.uma.example.springuma.model.PrediccionException;
+import com.uma.example.springuma.model.PrediccionJob;
+import com.uma.example.springuma.utils.CodecImagen;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 public class ImagenController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
     @Autowired
     private ImagenService imagenService;
 
+    @Autowired
+    private MiniaturaService miniaturaService;
+
+    @Autowired
+    private Paginacion paginacion;
+
+    @Value("${prediccion.lote.timeout-ms:300000}")
+    private long timeoutLoteMs;
+
+    // La imagen se descomprime en streaming sobre la respuesta, sin copias completas en memoria.
+    // Si el contenido esta en un fichero, Tomcat lo envia tal cual (sendfile, sin copias) cuando se guardo
+    // sin comprimir (saltando el byte de formato) o cuando es deflate y el cliente acepta deflate.
+    // Las imagenes no cambian tras subirlas: ETag fuerte a partir del hash del contenido, Last-Modified de
+    // la fecha de subida, y el 304 se responde solo con los metadatos, sin abrir el contenido.
+    // Con Range (y si If-Range coincide) se responde 206 con los rangos pedidos del contenido sin comprimir
 	@GetMapping("/imagen/{id}")
-	public ResponseEntity<?> downloadImage(@PathVariable long id){
-		byte[] imageData=imagenService.downloadImage(id);
-		return ResponseEntity.ok()
-        .contentType(MediaType.valueOf(
-            "image/png"
-        ))
-        .body(imageData);
+	public ResponseEntity<StreamingResponseBody> downloadImage(@PathVariable long id, HttpServletRequest request) throws IOException{
+        Imagen imagen = imagenService.findImagen(id);
+        if (imagen == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String etagCacheada = getEtagNoModificada(imagen, request);
+        if (etagCacheada != null) {
+            return cabecerasCache(ResponseEntity.status(HttpStatus.NOT_MODIFIED), imagen, etagCacheada).build();
+        }
+        MediaType tipo = getTipo(imagen);
+        List<HttpRange> rangos = getRangos(imagen, request);
+        if (rangos != null) {
+            return descargarRangos(imagen, tipo, rangos, request);
+        }
+        Path fichero = imagenService.getFicheroImagen(imagen);
+        if (fichero != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            CodecImagen codec = imagenService.getCodec(imagen);
+            long tamano = Files.size(fichero);
+            if (codec == CodecImagen.NINGUNO) {
+                request.setAttribute(SENDFILE_FILENAME, fichero.toString());
+                request.setAttribute(SENDFILE_START, 1L);
+                request.setAttribute(SENDFILE_END, tamano);
+                return cabecerasCache(ResponseEntity.ok(), imagen, etag(imagen, false))
+                    .contentType(tipo)
+                    .contentLength(tamano - 1)
+                    .build();
+            }
+            if (codec == CodecImagen.DEFLATE && aceptaDeflate(request)) {
+                request.setAttribute(SENDFILE_FILENAME, fichero.toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, tamano);
+                return cabecerasCache(ResponseEntity.ok(), imagen, etag(imagen, true))
+                    .contentType(tipo)
+                    .header(HttpHeaders.CONTENT_ENCODING, "deflate")
+                    .contentLength(tamano)
+                    .build();
+            }
+        }
+        ResponseEntity.BodyBuilder respuesta = cabecerasCache(ResponseEntity.ok(), imagen, etag(imagen, false)).contentType(tipo);
+        if (imagen.getTamano() != null) {
+            respuesta.contentLength(imagen.getTamano());
+        }
+        return respuesta.body(out -> imagenService.downloadImage(imagen, out));
 	}
 
+    // Rangos pedidos, o null si se envia la imagen entera: sin Range, If-Range que no coincide, Range mal
+    // formado o que pide mas bytes que la imagen entera (rangos solapados), que la RFC 9110 permite ignorar
+    private List<HttpRange> getRangos(Imagen imagen, HttpServletRequest request) {
+        String rango = request.getHeader(HttpHeaders.RANGE);
+        if (rango == null || imagen.getTamano() == null || !cumpleIfRange(imagen, request)) {
+            return null;
+        }
+        List<HttpRange> rangos;
+        try {
+            rangos = HttpRange.parseRanges(rango);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        long pedidos = 0;
+        for (HttpRange r : rangos) {
+            if (esSatisfacible(r, imagen.getTamano())) {
+                pedidos += r.getRangeEnd(imagen.getTamano()) - r.getRangeStart(imagen.getTamano()) + 1;
+            }
+        }
+        return rangos.isEmpty() || pedidos > imagen.getTamano() ? null : rangos;
+    }
+
+    private static boolean esSatisfacible(HttpRange rango, long tamano) {
+        try {
+            return rango.getRangeStart(tamano) <= rango.getRangeEnd(tamano);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // If-Range con ETag compara en fuerte con la de la representacion sin codificar; con fecha, con Last-Modified
+    private boolean cumpleIfRange(Imagen imagen, HttpServletRequest request) {
+        String siRango = request.getHeader(HttpHeaders.IF_RANGE);
+        if (siRango == null) {
+            return true;
+        }
+        siRango = siRango.trim();
+        if (siRango.startsWith("\"") || siRango.startsWith("W/")) {
+            return siRango.equals(etag(imagen, false));
+        }
+        try {
+            long fecha = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return imagen.getFecha() != null && imagen.getFecha().getTimeInMillis() / 1000 == fecha / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Los rangos son siempre de la representacion sin codificar. Un solo rango de una imagen guardada sin
+    // comprimir en fichero sale por sendfile; el resto se copia del almacen (ImagenService.getLectorRangos),
+    // varios rangos como multipart/byteranges
+    private ResponseEntity<StreamingResponseBody> descargarRangos(Imagen imagen, MediaType tipo, List<HttpRange> rangos,
+            HttpServletRequest request) throws IOException {
+        long tamano = imagen.getTamano();
+        List<long[]> satisfacibles = new ArrayList<>();
+        for (HttpRange rango : rangos) {
+            if (esSatisfacible(rango, tamano)) {
+                satisfacibles.add(new long[] {rango.getRangeStart(tamano), rango.getRangeEnd(tamano)});
+            }
+        }
+        if (satisfacibles.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + tamano)
+                .build();
+        }
+        ResponseEntity.BodyBuilder respuesta = cabecerasCache(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), imagen, etag(imagen, false));
+        if (satisfacibles.size() == 1) {
+            long desde = satisfacibles.get(0)[0];
+            long hasta = satisfacibles.get(0)[1];
+            respuesta.contentType(tipo)
+                .header(HttpHeaders.CONTENT_RANGE, rangoContenido(desde, hasta, tamano))
+                .contentLength(hasta - desde + 1);
+            Path fichero = imagenService.getFicheroImagen(imagen);
+            if (fichero != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                    && imagenService.getCodec(imagen) == CodecImagen.NINGUNO) {
+                request.setAttribute(SENDFILE_FILENAME, fichero.toString());
+                request.setAttribute(SENDFILE_START, 1 + desde);
+                request.setAttribute(SENDFILE_END, 1 + hasta + 1);
+                return respuesta.build();
+            }
+            ImagenService.LectorRangos lector = imagenService.getLectorRangos(imagen);
+            return respuesta.body(out -> lector.copiar(desde, hasta - desde + 1, out));
+        }
+        ImagenService.LectorRangos lector = imagenService.getLectorRangos(imagen);
+        String separador = MimeTypeUtils.generateMultipartBoundaryString();
+        return respuesta.contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + separador))
+            .body(out -> {
+                for (long[] rango : satisfacibles) {
+                    String cabecera = "\r\n--" + separador + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + tipo + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": " + rangoContenido(rango[0], rango[1], tamano) + "\r\n\r\n";
+                    out.write(cabecera.getBytes(StandardCharsets.US_ASCII));
+                    lector.copiar(rango[0], rango[1] - rango[0] + 1, out);
+                }
+                out.write(("\r\n--" + separador + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            });
+    }
+
+    private static String rangoContenido(long desde, long hasta, long tamano) {
+        return "bytes " + desde + "-" + hasta + "/" + tamano;
+    }
+
+    // El tipo lo declaro el cliente al subir la imagen; si no es valido se sirve como binario generico
+    private MediaType getTipo(Imagen imagen) {
+        try {
+            return MediaType.parseMediaType(imagenService.getTipoContenido(imagen));
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    // La version codificada en deflate es otra representacion de los mismos bytes: lleva su propia ETag fuerte
+    private String etag(Imagen imagen, boolean deflate) {
+        return imagen.getHash() == null ? null : "\"" + imagen.getHash() + (deflate ? "-deflate" : "") + "\"";
+    }
+
+    // ETag (de las que corresponden a esta imagen) que el cliente ya tiene en cache, o null si hay que enviarla.
+    // If-None-Match manda sobre If-Modified-Since, como indica la RFC 9110
+    private String getEtagNoModificada(Imagen imagen, HttpServletRequest request) {
+        String noCoincide = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (noCoincide != null) {
+            if (imagen.getHash() == null) {
+                return null;
+            }
+            for (String etiqueta : noCoincide.split(",")) {
+                String etag = etiqueta.trim();
+                if (etag.startsWith("W/")) {
+                    etag = etag.substring(2);
+                }
+                if (etag.equals("*") || etag.equals(etag(imagen, false)) || etag.equals(etag(imagen, true))) {
+                    return etag.equals("*") ? etag(imagen, false) : etag;
+                }
+            }
+            return null;
+        }
+        long modificadaDesde = -1;
+        try {
+            modificadaDesde = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            // fecha mal formada: se ignora la cabecera
+        }
+        if (modificadaDesde >= 0 && imagen.getFecha() != null
+                && imagen.getFecha().getTimeInMillis() / 1000 <= modificadaDesde / 1000) {
+            return etag(imagen, false);
+        }
+        return null;
+    }
+
+    // Datos clinicos: se pueden guardar en la cache del navegador, no en caches compartidas
+    private ResponseEntity.BodyBuilder cabecerasCache(ResponseEntity.BodyBuilder respuesta, Imagen imagen, String etag) {
+        respuesta.cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (imagen.getTamano() != null) {
+            respuesta.header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }
+        if (etag != null) {
+            respuesta.eTag(etag);
+        }
+        if (imagen.getFecha() != null) {
+            respuesta.lastModified(imagen.getFecha().getTimeInMillis());
+        }
+        return respuesta;
+    }
+
+    // El contenido deflate se guarda en formato zlib, que es exactamente la codificacion HTTP "deflate"
+    private boolean aceptaDeflate(HttpServletRequest request) {
+        String aceptadas = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (aceptadas == null) {
+            return false;
+        }
+        for (String codificacion : aceptadas.split(",")) {
+            String[] partes = codificacion.trim().split(";");
+            if (partes[0].trim().equalsIgnoreCase("deflate")) {
+                return partes.length == 1 || !partes[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // Miniatura PNG de la imagen; el ancho se ajusta al siguiente de imagen.miniatura.anchos
+    @GetMapping("/imagen/{id}/thumbnail")
+    public ResponseEntity<byte[]> getMiniatura(@PathVariable long id, @RequestParam(name = "w", defaultValue = "256") int ancho) throws IOException {
+        Imagen imagen = imagenService.findImagen(id);
+        if (imagen == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return reducida(miniaturaService.getMiniatura(imagen, ancho));
+    }
+
+    // Vista previa PNG de imagen.preview.ancho pixeles de ancho
+    @GetMapping("/imagen/{id}/preview")
+    public ResponseEntity<byte[]> getPreview(@PathVariable long id) throws IOException {
+        Imagen imagen = imagenService.findImagen(id);
+        if (imagen == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return reducida(miniaturaService.getPreview(imagen));
+    }
+
+    private ResponseEntity<byte[]> reducida(byte[] png) {
+        if (png == null) {
+            // el contenido guardado no es una imagen que se pueda decodificar
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).contentLength(png.length).body(png);
+    }
+
+    @GetMapping("/imagen/miniatura/cache")
+    public Map<String, Long> getEstadisticasMiniaturas() {
+        return miniaturaService.getEstadisticas();
+    }
+
     @GetMapping("/imagen/info/{id}")
     public Imagen getImagen(@PathVariable("id") Long id){
         return imagenService.getImagen(id);
     }
 
+    // La prediccion se ejecuta en el pool de predicciones; el hilo de Tomcat queda libre mientras tanto
     @GetMapping("/imagen/predict/{id}")
-    public ResponseEntity<?>  getImagenPrediction(@PathVariable("id") Long id){
+    public CompletableFuture<ResponseEntity<?>> getImagenPrediction(@PathVariable("id") Long id){
+        PrediccionJob job;
         try{
-            return ResponseEntity.ok("{\"prediction\": \""+imagenService.getNewPrediccion(id)+"\"}");
+            job = imagenService.submitPrediccion(id);
         }
-        catch(Exception e){
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().body("Error al realizar la prediccion"+e.getMessage());
+        catch(RejectedExecutionException e){
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Demasiadas predicciones en curso"));
         }
-        
+        return job.getResultado().handle((prediccion, e) -> {
+            if (e == null) {
+                return ResponseEntity.ok("{\"prediction\": \""+prediccion+"\"}");
+            }
+            Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (causa instanceof PrediccionException fallo) {
+                return respuestaFallo(fallo);
+            }
+            causa.printStackTrace();
+            return ResponseEntity.internalServerError().body("Error al realizar la prediccion"+causa.getMessage());
+        });
     }
- 
+
+    // Modelo no disponible 503 (con Retry-After si se sabe cuando volver), sin respuesta a tiempo 504,
+    // error del servicio remoto 502, imagen que el modelo no puede leer 422
+    private static ResponseEntity<?> respuestaFallo(PrediccionException fallo) {
+        HttpStatus estado = switch (fallo.getTipo()) {
+            case NO_DISPONIBLE -> HttpStatus.SERVICE_UNAVAILABLE;
+            case TIMEOUT -> HttpStatus.GATEWAY_TIMEOUT;
+            case ERROR_REMOTO -> HttpStatus.BAD_GATEWAY;
+            case IMAGEN_NO_VALIDA -> HttpStatus.UNPROCESSABLE_ENTITY;
+        };
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.status(estado);
+        if (fallo.getEsperaMs() > 0) {
+            respuesta.header(HttpHeaders.RETRY_AFTER, String.valueOf((fallo.getEsperaMs() + 999) / 1000));
+        }
+        return respuesta.body("Error al realizar la prediccion: " + fallo.getMessage());
+    }
+
+    // Predicciones de varias imagenes (por ids o por paciente) en paralelo; se devuelve una linea
+    // JSON por imagen (application/x-ndjson) segun va terminando cada una
+    @PostMapping(value = "/imagen/predict/batch", consumes = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ResponseBodyEmitter> getImagenesPrediction(@RequestBody LotePrediccion lote){
+        List<Long> ids;
+        try{
+            ids = imagenService.getIdsLote(lote);
+        }
+        catch(IllegalArgumentException e){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutLoteMs);
+        imagenService.predecirLote(ids, resultado -> {
+            synchronized (emitter) {
+                try {
+                    emitter.send(resultado, MediaType.APPLICATION_JSON);
+                    emitter.send("\n", MediaType.TEXT_PLAIN);
+                } catch (IOException | IllegalStateException e) {
+                    // el cliente se ha desconectado, el resto del lote termina igualmente
+                }
+            }
+        }).whenComplete((v, e) -> emitter.complete());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
 	@PostMapping(value ="/imagen",     consumes = { MediaType.MULTIPART_FORM_DATA_VALUE, MediaType.APPLICATION_JSON_VALUE} )
 	public ResponseEntity<?> uploadImage(@RequestPart("image") MultipartFile file,
             @RequestPart("paciente") Paciente paciente) throws IOException {
@@ -57,9 +407,14 @@ public class ImagenController {
 		return ResponseEntity.ok(uploadImage);
 	}
 
+    // Por paginas, ordenadas por id o con ?orden=fecha por fecha de subida (ver Paginacion)
     @GetMapping("/imagen/paciente/{id}")
-    public List<Imagen> getImagenes (@PathVariable("id") Long id) {
-        return imagenService.getImagenesPaciente(id);
+    public ResponseEntity<List<ImagenInfo>> getImagenes (@PathVariable("id") Long id,
+            @RequestParam(name = "despues", required = false) String despues,
+            @RequestParam(name = "pagina", required = false) Integer pagina,
+            @RequestParam(name = "tamano", required = false) Integer tamano,
+            @RequestParam(name = "orden", required = false) String orden) {
+        return paginacion.responder(imagenService.getImagenesPaciente(id, paginacion.leer(despues, pagina, tamano, orden)));
     }
 
     @DeleteMapping("/imagen/{id}")
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.uma.example.springuma.model.Informe;
@@ -21,15 +22,22 @@ public class InformeController {
     
     @Autowired
     private InformeService informeService;
+
+    @Autowired
+    private Paginacion paginacion;
     
     @GetMapping("/informe/{id}")
     public Informe getInforme(@PathVariable("id") Long id) {
         return informeService.getInforme(id);
     }
 
+    // Por paginas ordenadas por id (ver Paginacion)
     @GetMapping("informe/imagen/{id}")
-    public List<Informe> getInformes(@PathVariable("id") Long id) {
-        return informeService.getInformesImagen(id);
+    public ResponseEntity<List<Informe>> getInformes(@PathVariable("id") Long id,
+            @RequestParam(name = "despues", required = false) String despues,
+            @RequestParam(name = "pagina", required = false) Integer pagina,
+            @RequestParam(name = "tamano", required = false) Integer tamano) {
+        return paginacion.responder(informeService.getInformesImagen(id, paginacion.leer(despues, pagina, tamano, null)));
     }
 
     @PostMapping(value = "/informe",     consumes = {MediaType.APPLICATION_JSON_VALUE} )
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.uma.example.springuma.model.Paciente;
@@ -21,15 +22,22 @@ public class PacienteController {
     
     @Autowired
     private PacienteService pacienteService;
+
+    @Autowired
+    private Paginacion paginacion;
     
     @GetMapping("/paciente/{id}")
     public Paciente getPaciente(@PathVariable("id") Long id) {
         return pacienteService.getPaciente(id);
     }
 
+    // Por paginas ordenadas por id (ver Paginacion)
     @GetMapping("/paciente/medico/{id}")
-    public List<Paciente> getPacientes(@PathVariable("id") Long id) {
-        return pacienteService.getPacientesMedico(id);
+    public ResponseEntity<List<Paciente>> getPacientes(@PathVariable("id") Long id,
+            @RequestParam(name = "despues", required = false) String despues,
+            @RequestParam(name = "pagina", required = false) Integer pagina,
+            @RequestParam(name = "tamano", required = false) Integer tamano) {
+        return paginacion.responder(pacienteService.getPacientesMedico(id, paginacion.leer(despues, pagina, tamano, null)));
     }
 
     @PostMapping(value = "/paciente",     consumes = {MediaType.APPLICATION_JSON_VALUE} )
@@ -43,6 +51,18 @@ public class PacienteController {
         }
 	}
 
+    // Alta de varios pacientes a la vez, todos o ninguno
+    @PostMapping(value = "/paciente/batch",     consumes = {MediaType.APPLICATION_JSON_VALUE} )
+	public ResponseEntity<?> savePacientes(@RequestBody List<Paciente> pacientes) {
+        try{
+            pacienteService.addPacientes(pacientes);
+            return ResponseEntity.status(201).build();
+        }
+        catch(Exception e){
+            return ResponseEntity.internalServerError().body("Alguno de los pacientes ya existe");
+        }
+	}
+
     @PutMapping(value = "/paciente",     consumes = {MediaType.APPLICATION_JSON_VALUE} )
     public ResponseEntity<?> updateCuenta (@RequestBody Paciente paciente) {
         try{
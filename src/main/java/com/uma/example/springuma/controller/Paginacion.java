@@ -0,0 +1,50 @@
+package com.uma.example.springuma.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.uma.example.springuma.model.Listado;
+import com.uma.example.springuma.model.Pagina;
+
+// Parametros comunes de los listados: ?tamano=, ?despues=<cursor> (keyset) o ?pagina=<n> (offset) y, donde
+// se puede, ?orden=id|fecha. El cuerpo sigue siendo la lista; la siguiente pagina va en las cabeceras
+// X-Siguiente-Cursor y Link rel="next", que faltan en la ultima
+@Component
+public class Paginacion {
+
+    public static final String SIGUIENTE_CURSOR = "X-Siguiente-Cursor";
+
+    @Value("${paginacion.tamano-defecto:100}")
+    private int tamanoDefecto;
+
+    @Value("${paginacion.tamano-maximo:1000}")
+    private int tamanoMaximo;
+
+    public Pagina leer(String despues, Integer numero, Integer tamano, String orden) {
+        try {
+            return Pagina.de(despues, numero, tamano, orden, tamanoDefecto, tamanoMaximo);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    public <T> ResponseEntity<List<T>> responder(Listado<T> listado) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (listado.siguiente() != null) {
+            String siguiente = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("despues", listado.siguiente())
+                .replaceQueryParam("pagina")
+                .build().encode().toUriString();
+            respuesta.header(SIGUIENTE_CURSOR, listado.siguiente());
+            respuesta.header(HttpHeaders.LINK, "<" + siguiente + ">; rel=\"next\"");
+        }
+        return respuesta.body(listado.elementos());
+    }
+}
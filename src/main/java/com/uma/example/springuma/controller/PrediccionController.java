@@ -0,0 +1,95 @@
+package com.uma.example.springuma.controller;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.uma.example.springuma.model.ImagenService;
+import com.uma.example.springuma.model.Prediccion;
+import com.uma.example.springuma.model.PrediccionJob;
+import com.uma.example.springuma.model.PrediccionJobService;
+import com.uma.example.springuma.model.PrediccionService;
+import com.uma.example.springuma.model.RepositoryPrediccion;
+
+@RestController
+public class PrediccionController {
+
+    @Autowired
+    private PrediccionService prediccionService;
+
+    @Autowired
+    private PrediccionJobService prediccionJobService;
+
+    @Autowired
+    private ImagenService imagenService;
+
+    // Contadores de aciertos, fallos y desalojos de la cache de predicciones y de predicciones compartidas
+    @GetMapping("/prediccion/cache")
+    public Map<String, Long> getEstadisticasCache() {
+        return prediccionService.getEstadisticasCache();
+    }
+
+    // Estado del circuito y contadores de llamadas, reintentos y rechazos al modelo
+    @GetMapping("/prediccion/resiliencia")
+    public Map<String, Object> getEstadisticasResiliencia() {
+        return prediccionService.getEstadisticasResiliencia();
+    }
+
+    // Lotes enviados al modelo y cuantas imagenes han ido en ellos
+    @GetMapping("/prediccion/agrupacion")
+    public Map<String, Object> getEstadisticasAgrupacion() {
+        return prediccionService.getEstadisticasAgrupacion();
+    }
+
+    // Predicciones guardadas (las de los informes), con sus puntuaciones
+    @GetMapping("/prediccion/{id}")
+    public ResponseEntity<Prediccion> getPrediccion(@PathVariable("id") Long id) {
+        Prediccion prediccion = prediccionService.getPrediccion(id);
+        return prediccion != null ? ResponseEntity.ok(prediccion) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/prediccion/imagen/{id}")
+    public List<Prediccion> getPrediccionesImagen(@PathVariable("id") Long id) {
+        return prediccionService.getPrediccionesImagen(id);
+    }
+
+    // Total y puntuacion media de cancer por etiqueta de las predicciones guardadas
+    @GetMapping("/prediccion/resumen")
+    public List<RepositoryPrediccion.ResumenPrediccion> getResumen() {
+        return prediccionService.getResumen();
+    }
+
+    // Encola la prediccion de una imagen y responde 202 con el job a consultar
+    @PostMapping("/prediction-jobs/imagen/{id}")
+    public ResponseEntity<?> submitPrediccion(@PathVariable("id") Long id) {
+        try{
+            PrediccionJob job = imagenService.submitPrediccion(id);
+            return ResponseEntity.accepted().location(URI.create("/prediction-jobs/" + job.getId())).body(job);
+        }
+        catch(RejectedExecutionException e){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Demasiadas predicciones en curso");
+        }
+    }
+
+    // Estado del job; con ?espera=ms se responde al terminar el job o al agotar la espera (long-poll)
+    @GetMapping("/prediction-jobs/{id}")
+    public CompletableFuture<ResponseEntity<PrediccionJob>> getJob(@PathVariable("id") String id,
+            @RequestParam(name = "espera", defaultValue = "0") long espera) {
+        PrediccionJob job = prediccionJobService.getJob(id);
+        if (job == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        return prediccionJobService.esperar(job, espera).thenApply(ResponseEntity::ok);
+    }
+}
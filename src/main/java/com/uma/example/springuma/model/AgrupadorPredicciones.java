@@ -0,0 +1,134 @@
+package com.uma.example.springuma.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Junta en una sola inferencia las predicciones que llegan a la vez, si el backend admite lotes. La
+// primera llamada abre un lote y espera hasta predictor.agrupacion.espera-ms o hasta que el lote tenga
+// predictor.agrupacion.maximo imagenes; entonces lo envia desde su propio hilo (sin hilos aparte) y cada
+// llamada recoge su resultado. La latencia anadida esta acotada por esa espera. El lote pasa por
+// ResilienciaPredictor como una unica llamada. Si una imagen no es valida falla el lote entero: entonces
+// cada llamada repite la suya por separado para que el error solo le llegue a quien le corresponde
+@Component
+public class AgrupadorPredicciones {
+
+    @Autowired
+    private Predictor predictor;
+
+    @Autowired
+    private ResilienciaPredictor resilienciaPredictor;
+
+    @Value("${predictor.agrupacion.espera-ms:10}")
+    private long esperaMs;
+
+    @Value("${predictor.agrupacion.maximo:16}")
+    private int maximo;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition lleno = lock.newCondition();
+    private Lote abierto;
+
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong imagenes = new AtomicLong();
+    private final AtomicLong mayorLote = new AtomicLong();
+
+    private static class Lote {
+        final List<byte[]> imagenes = new ArrayList<>();
+        final CompletableFuture<List<Map<String, Double>>> resultado = new CompletableFuture<>();
+    }
+
+    public Map<String, Double> predecir(byte[] imagen) throws PrediccionException {
+        if (!predictor.admiteLotes() || maximo <= 1) {
+            return resilienciaPredictor.ejecutar(() -> predictor.predecir(imagen));
+        }
+
+        Lote lote;
+        int posicion;
+        boolean lider;
+        lock.lock();
+        try {
+            lider = abierto == null;
+            if (lider) {
+                abierto = new Lote();
+            }
+            lote = abierto;
+            posicion = lote.imagenes.size();
+            lote.imagenes.add(imagen);
+            if (lote.imagenes.size() >= maximo) {
+                abierto = null;
+                lleno.signalAll();
+            }
+            if (lider) {
+                esperarLote(lote);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (lider) {
+            enviar(lote);
+        }
+        try {
+            return lote.resultado.get().get(posicion);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "Prediccion interrumpida");
+        } catch (ExecutionException e) {
+            PrediccionException fallo = (PrediccionException) e.getCause();
+            if (fallo.getTipo() == PrediccionException.Tipo.IMAGEN_NO_VALIDA && lote.imagenes.size() > 1) {
+                return resilienciaPredictor.ejecutar(() -> predictor.predecir(imagen));
+            }
+            throw fallo;
+        }
+    }
+
+    // Con el lock cogido: hasta que se llene o pase la espera. Si interrumpen al hilo se envia lo que haya
+    private void esperarLote(Lote lote) {
+        long restante = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        try {
+            while (abierto == lote && restante > 0) {
+                restante = lleno.awaitNanos(restante);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (abierto == lote) {
+            abierto = null;
+        }
+    }
+
+    private void enviar(Lote lote) {
+        lotes.incrementAndGet();
+        imagenes.addAndGet(lote.imagenes.size());
+        mayorLote.accumulateAndGet(lote.imagenes.size(), Math::max);
+        try {
+            lote.resultado.complete(resilienciaPredictor.ejecutar(() -> predictor.predecirLote(lote.imagenes)));
+        } catch (PrediccionException e) {
+            lote.resultado.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            lote.resultado.completeExceptionally(new PrediccionException(PrediccionException.Tipo.ERROR_REMOTO,
+                "Error al realizar la prediccion: " + e.getMessage(), e));
+        }
+    }
+
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("activa", predictor.admiteLotes() && maximo > 1);
+        estadisticas.put("lotes", lotes.get());
+        estadisticas.put("imagenes", imagenes.get());
+        estadisticas.put("mayorLote", mayorLote.get());
+        return estadisticas;
+    }
+}
@@ -0,0 +1,42 @@
+package com.uma.example.springuma.model;
+
+import jakarta.persistence.*;
+
+// Contenido de una imagen guardado en la propia base de datos (imagen.store=database)
+@Entity
+@Table(name = "blob_imagen")
+public class BlobImagen {
+
+    @Id
+    @Column(name = "clave", length = 64)
+    private String clave;
+
+    @Lob
+    @Column(name = "datos")
+    private byte[] datos;
+
+    public BlobImagen() {
+        // Constructor vacío necesario para JPA
+    }
+
+    public BlobImagen(String clave, byte[] datos) {
+        this.clave = clave;
+        this.datos = datos;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+
+    public byte[] getDatos() {
+        return datos;
+    }
+
+    public void setDatos(byte[] datos) {
+        this.datos = datos;
+    }
+}
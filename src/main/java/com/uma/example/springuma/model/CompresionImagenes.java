@@ -0,0 +1,139 @@
+package com.uma.example.springuma.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import com.uma.example.springuma.utils.CodecImagen;
+import com.uma.example.springuma.utils.FormatoBloques;
+import com.uma.example.springuma.utils.ImageUtils;
+
+import jakarta.annotation.PostConstruct;
+
+// Elige como comprimir cada imagen segun su tipo de contenido (imagen.compresion.tipos).
+// PNG y JPEG ya vienen comprimidos: si el codec no ahorra al menos imagen.compresion.ahorro-minimo,
+// se guardan sin comprimir y la descarga no tiene que descomprimir nada
+@Component
+public class CompresionImagenes {
+
+    // Bloque de lectura de las subidas, y muestra con la que se decide si comprimir
+    private static final int MUESTRA = 64 * 1024;
+
+    @Value("${imagen.compresion.tipos:image/png:zstd,image/jpeg:ninguno,*:deflate}")
+    private String tipos;
+
+    @Value("${imagen.compresion.nivel-deflate:6}")
+    private int nivelDeflate;
+
+    @Value("${imagen.compresion.nivel-zstd:3}")
+    private int nivelZstd;
+
+    @Value("${imagen.compresion.ahorro-minimo:0.05}")
+    private double ahorroMinimo;
+
+    // Las imagenes comprimidas de mas de un bloque se guardan por bloques (FormatoBloques), para poder
+    // leer un rango sin descomprimir desde el principio. Con 0 se guardan en un solo flujo (los rangos
+    // descomprimen desde el principio), que en deflate sigue siendo paralelo por encima de 1MB (DeflateParalelo)
+    @Value("${imagen.compresion.bloque:256KB}")
+    private DataSize tamanoBloque;
+
+    @Value("${imagen.subida.tamano-maximo:20MB}")
+    private DataSize tamanoMaximo;
+
+    private final Map<String, CodecImagen> codecs = new LinkedHashMap<>();
+
+    // Formato "tipo:codec,tipo:codec"; el tipo puede ser exacto (image/png), por familia (image/*) o * para el resto
+    @PostConstruct
+    public void init() {
+        for (String entrada : tipos.split(",")) {
+            if (entrada.isBlank()) {
+                continue;
+            }
+            int separador = entrada.lastIndexOf(':');
+            if (separador < 0) {
+                throw new IllegalArgumentException("imagen.compresion.tipos: falta el codec en '" + entrada + "'");
+            }
+            codecs.put(entrada.substring(0, separador).trim().toLowerCase(), CodecImagen.deNombre(entrada.substring(separador + 1)));
+        }
+    }
+
+    public CodecImagen getCodec(String tipo) {
+        if (tipo != null) {
+            String normalizado = tipo.split(";")[0].trim().toLowerCase();
+            CodecImagen codec = codecs.get(normalizado);
+            if (codec == null && normalizado.contains("/")) {
+                codec = codecs.get(normalizado.substring(0, normalizado.indexOf('/')) + "/*");
+            }
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return codecs.getOrDefault("*", CodecImagen.DEFLATE);
+    }
+
+    // Una sola pasada por la entrada: se comprime sobre salida a la vez que se calcula el hash y se cuentan
+    // los bytes, cortando en cuanto se supera imagen.subida.tamano-maximo. El codec se decide con el primer
+    // bloque: si ahi no ahorra al menos imagen.compresion.ahorro-minimo, el contenido se guarda sin comprimir.
+    // Sin comprimir ya se puede leer por rangos; comprimido se parte en bloques de imagen.compresion.bloque
+    public Comprimido comprimir(InputStream entrada, String tipo, OutputStream salida) throws IOException {
+        MessageDigest sha = ImageUtils.sha256();
+        byte[] buffer = new byte[MUESTRA];
+        int leidos = entrada.readNBytes(buffer, 0, buffer.length);
+        CodecImagen codec = elegirCodec(buffer, leidos, tipo);
+        long total = 0;
+        try (OutputStream comprimido = codec == CodecImagen.NINGUNO || tamanoBloque.toBytes() <= 0
+                ? ImageUtils.compresor(salida, codec, getNivel(codec))
+                : FormatoBloques.compresor(salida, codec, getNivel(codec), (int) tamanoBloque.toBytes())) {
+            while (leidos > 0) {
+                total += leidos;
+                if (total > tamanoMaximo.toBytes()) {
+                    throw new MaxUploadSizeExceededException(tamanoMaximo.toBytes());
+                }
+                sha.update(buffer, 0, leidos);
+                comprimido.write(buffer, 0, leidos);
+                leidos = entrada.read(buffer);
+            }
+        }
+        return new Comprimido(HexFormat.of().formatHex(sha.digest()), total);
+    }
+
+    // Hash (como ImageUtils.hashImage) y tamaño del contenido sin comprimir
+    public record Comprimido(String hash, long tamano) {
+    }
+
+    private CodecImagen elegirCodec(byte[] muestra, int longitud, String tipo) throws IOException {
+        CodecImagen codec = getCodec(tipo);
+        if (codec == CodecImagen.NINGUNO || longitud == 0) {
+            return codec;
+        }
+        long[] tamano = {0};
+        OutputStream contador = new OutputStream() {
+            @Override
+            public void write(int b) {
+                tamano[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                tamano[0] += len;
+            }
+        };
+        try (OutputStream comprimido = ImageUtils.compresor(contador, codec, getNivel(codec))) {
+            comprimido.write(muestra, 0, longitud);
+        }
+        return tamano[0] <= longitud * (1 - ahorroMinimo) ? codec : CodecImagen.NINGUNO;
+    }
+
+    private int getNivel(CodecImagen codec) {
+        return codec == CodecImagen.ZSTD ? nivelZstd : nivelDeflate;
+    }
+}
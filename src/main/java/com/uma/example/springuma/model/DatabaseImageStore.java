@@ -0,0 +1,165 @@
+package com.uma.example.springuma.model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+// Contenido en la tabla blob_imagen, direccionado por el hash de la imagen. Las escrituras y borrados van
+// por la conexion de la transaccion en curso, asi que se confirman o deshacen con ella
+@Component
+@ConditionalOnProperty(name = "imagen.store", havingValue = "database", matchIfMissing = true)
+public class DatabaseImageStore implements ImageStore {
+
+    private static final int BUFFER_ESCRITURA = 64 * 1024;
+
+    @Autowired
+    private RepositoryBlobImagen repositoryBlobImagen;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Override
+    public String getReferencia(String hash) {
+        return hash;
+    }
+
+    @Override
+    public String guardar(String hash, byte[] datos) {
+        if (!repositoryBlobImagen.existsById(hash)) {
+            repositoryBlobImagen.save(new BlobImagen(hash, datos));
+        }
+        return hash;
+    }
+
+    // Se escribe a un fichero temporal y al confirmar se inserta desde el fichero con setBinaryStream:
+    // el contenido no pasa entero por memoria. La insercion usa la conexion de la transaccion (DataSourceUtils)
+    @Override
+    public Escritura nuevaEscritura() throws IOException {
+        Path temporal = Files.createTempFile("blob-imagen-", "");
+        OutputStream salida = new BufferedOutputStream(Files.newOutputStream(temporal), BUFFER_ESCRITURA);
+        return new Escritura() {
+            @Override
+            public OutputStream getSalida() {
+                return salida;
+            }
+
+            @Override
+            public String confirmar(String hash) throws IOException {
+                salida.close();
+                if (repositoryBlobImagen.existsById(hash)) {
+                    return hash;
+                }
+                Connection conexion = DataSourceUtils.getConnection(dataSource);
+                try (PreparedStatement ps = conexion.prepareStatement("insert into blob_imagen (clave, datos) values (?, ?)");
+                        InputStream datos = Files.newInputStream(temporal)) {
+                    ps.setString(1, hash);
+                    ps.setBinaryStream(2, datos, Files.size(temporal));
+                    ps.executeUpdate();
+                } catch (SQLException e) {
+                    // otra subida con el mismo contenido lo ha guardado antes
+                    if (!repositoryBlobImagen.existsById(hash)) {
+                        throw new IOException(e);
+                    }
+                } finally {
+                    DataSourceUtils.releaseConnection(conexion, dataSource);
+                }
+                return hash;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    salida.close();
+                } finally {
+                    Files.deleteIfExists(temporal);
+                }
+            }
+        };
+    }
+
+    // La conexion queda abierta hasta cerrar el stream: el blob se lee de JDBC sin cargarlo entero en memoria
+    @Override
+    public InputStream abrir(String referencia) throws IOException {
+        try {
+            Connection conexion = dataSource.getConnection();
+            try {
+                PreparedStatement ps = conexion.prepareStatement("select datos from blob_imagen where clave = ?");
+                ps.setString(1, referencia);
+                ResultSet rs = ps.executeQuery();
+                InputStream datos = rs.next() ? rs.getBinaryStream(1) : null;
+                if (datos == null) {
+                    throw new FileNotFoundException(referencia);
+                }
+                return new FilterInputStream(datos) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            try {
+                                conexion.close();
+                            } catch (SQLException e) {
+                                throw new IOException(e);
+                            }
+                        }
+                    }
+                };
+            } catch (SQLException | IOException | RuntimeException e) {
+                conexion.close();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public long getTamano(String referencia) throws IOException {
+        try (Connection conexion = dataSource.getConnection();
+                PreparedStatement ps = conexion.prepareStatement("select octet_length(datos) from blob_imagen where clave = ?")) {
+            ps.setString(1, referencia);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new FileNotFoundException(referencia);
+                }
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void borrar(String referencia) {
+        repositoryBlobImagen.deleteById(referencia);
+    }
+
+    // Las filas sin confirmar de otras transacciones no se ven: no hace falta filtrar por fecha
+    @Override
+    public List<String> listar(long antesDe) {
+        return new JdbcTemplate(dataSource).queryForList("select clave from blob_imagen", String.class);
+    }
+
+    @Override
+    public boolean existe(String referencia) {
+        return repositoryBlobImagen.existsById(referencia);
+    }
+}
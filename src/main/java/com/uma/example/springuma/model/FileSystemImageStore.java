@@ -0,0 +1,263 @@
+package com.uma.example.springuma.model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+
+// Contenido en disco, direccionado por hash y repartido en subdirectorios (ab/cd/abcd...) para no
+// acumular miles de ficheros en un mismo directorio. La base de datos solo guarda la ruta relativa.
+// Dentro de una transaccion los ficheros siguen su resultado: el que crea una escritura se borra si la
+// transaccion se deshace, y el que se borra se aparta a la papelera (.borrado-*) y solo se elimina al
+// confirmarla; si se deshace vuelve a su sitio. pendientes cuenta por hash las transacciones en curso que
+// usan el fichero, para no borrar al deshacer uno que otra subida ya ha reutilizado
+@Component
+@ConditionalOnProperty(name = "imagen.store", havingValue = "filesystem")
+public class FileSystemImageStore implements ImageStore {
+
+    @Value("${imagen.store.directorio:./imagenes}")
+    private String directorio;
+
+    private static final int BUFFER_ESCRITURA = 64 * 1024;
+
+    private static final String PAPELERA = ".borrado-";
+
+    private Path raiz;
+
+    private final ConcurrentHashMap<String, Pendiente> pendientes = new ConcurrentHashMap<>();
+
+    // Transacciones en curso que usan el fichero de un hash; reutilizado si alguna no lo creo
+    private record Pendiente(int transacciones, boolean reutilizado) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        raiz = Path.of(directorio).toAbsolutePath().normalize();
+        Files.createDirectories(raiz);
+    }
+
+    @Override
+    public String getReferencia(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    @Override
+    public String guardar(String hash, byte[] datos) throws IOException {
+        String referencia = getReferencia(hash);
+        if (Files.exists(resolver(referencia))) {
+            return referencia;
+        }
+        try (Escritura escritura = nuevaEscritura()) {
+            escritura.getSalida().write(datos);
+            return escritura.confirmar(hash);
+        }
+    }
+
+    // Escritura atomica: fichero temporal en el almacen y rename al confirmar, nunca se ve un fichero a medias
+    @Override
+    public Escritura nuevaEscritura() throws IOException {
+        return new EscrituraFichero();
+    }
+
+    @Override
+    public InputStream abrir(String referencia) throws IOException {
+        return Channels.newInputStream(FileChannel.open(resolver(referencia), StandardOpenOption.READ));
+    }
+
+    // Sin leer lo que se salta: se posiciona el canal
+    @Override
+    public InputStream abrir(String referencia, long desde) throws IOException {
+        FileChannel canal = FileChannel.open(resolver(referencia), StandardOpenOption.READ);
+        try {
+            canal.position(desde);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+        return Channels.newInputStream(canal);
+    }
+
+    @Override
+    public long getTamano(String referencia) throws IOException {
+        return Files.size(resolver(referencia));
+    }
+
+    @Override
+    public void borrar(String referencia) throws IOException {
+        Path fichero = resolver(referencia);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Files.deleteIfExists(fichero);
+            return;
+        }
+        Path papelera = raiz.resolve(PAPELERA + UUID.randomUUID());
+        try {
+            Files.move(fichero, papelera, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int estado) {
+                try {
+                    // si se deshace y entretanto otra subida ha vuelto a escribir el contenido, sobra la copia
+                    if (estado != STATUS_COMMITTED && !Files.exists(fichero)) {
+                        Files.move(papelera, fichero, StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.deleteIfExists(papelera);
+                    }
+                } catch (IOException e) {
+                    // queda en la papelera; la borra recolectar
+                }
+            }
+        });
+    }
+
+    // Hashes del contenido guardado antes de 'antesDe', sin los que usa alguna transaccion en curso.
+    // Los ficheros de la papelera que quedaran de una parada a medias tambien se borran aqui
+    @Override
+    public List<String> listar(long antesDe) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        try (Stream<Path> ficheros = Files.walk(raiz, 3)) {
+            for (Path fichero : (Iterable<Path>) ficheros::iterator) {
+                if (!Files.isRegularFile(fichero) || Files.getLastModifiedTime(fichero).toMillis() >= antesDe) {
+                    continue;
+                }
+                String nombre = fichero.getFileName().toString();
+                if (nombre.startsWith(PAPELERA)) {
+                    Files.deleteIfExists(fichero);
+                } else if (raiz.relativize(fichero).getNameCount() == 3 && !pendientes.containsKey(nombre)) {
+                    hashes.add(nombre);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    @Override
+    public boolean existe(String referencia) {
+        return Files.exists(resolver(referencia));
+    }
+
+    @Override
+    public Path getFichero(String referencia) {
+        return resolver(referencia);
+    }
+
+    private Path resolver(String referencia) {
+        Path fichero = raiz.resolve(referencia).normalize();
+        if (!fichero.startsWith(raiz)) {
+            throw new IllegalArgumentException("Referencia fuera del almacen: " + referencia);
+        }
+        return fichero;
+    }
+
+    // Fin de una transaccion que uso el fichero; si lo creo y se ha deshecho, se borra salvo que otra lo reutilice
+    private void liberar(String hash, Path fichero, boolean deshacer) {
+        pendientes.computeIfPresent(hash, (h, pendiente) -> {
+            if (deshacer && !pendiente.reutilizado()) {
+                try {
+                    Files.deleteIfExists(fichero);
+                } catch (IOException e) {
+                    // lo borrara recolectar
+                }
+            }
+            return pendiente.transacciones() > 1 ? new Pendiente(pendiente.transacciones() - 1, pendiente.reutilizado()) : null;
+        });
+    }
+
+    private class EscrituraFichero implements Escritura {
+
+        private final Path temporal;
+        private final FileChannel canal;
+        private final OutputStream salida;
+
+        EscrituraFichero() throws IOException {
+            temporal = Files.createTempFile(raiz, ".tmp-", "");
+            canal = FileChannel.open(temporal, StandardOpenOption.WRITE);
+            salida = new BufferedOutputStream(Channels.newOutputStream(canal), BUFFER_ESCRITURA);
+        }
+
+        @Override
+        public OutputStream getSalida() {
+            return salida;
+        }
+
+        @Override
+        public String confirmar(String hash) throws IOException {
+            String referencia = getReferencia(hash);
+            Path destino = resolver(referencia);
+            salida.flush();
+            canal.force(true);
+            canal.close();
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                mover(destino);
+                return referencia;
+            }
+            boolean[] creado = {false};
+            try {
+                pendientes.compute(hash, (h, pendiente) -> {
+                    try {
+                        creado[0] = mover(destino);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return pendiente == null ? new Pendiente(1, !creado[0])
+                        : new Pendiente(pendiente.transacciones() + 1, pendiente.reutilizado() || !creado[0]);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int estado) {
+                    liberar(hash, destino, creado[0] && estado != STATUS_COMMITTED);
+                }
+            });
+            return referencia;
+        }
+
+        // Mueve el temporal a su sitio si el contenido no estaba; si estaba se actualiza su fecha para que
+        // recolectar no lo tome por abandonado mientras esta subida no termina. Devuelve si lo ha creado
+        private boolean mover(Path destino) throws IOException {
+            if (Files.exists(destino)) {
+                Files.setLastModifiedTime(destino, FileTime.fromMillis(System.currentTimeMillis()));
+                return false;
+            }
+            Files.createDirectories(destino.getParent());
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+
+        // Si se confirmo, el temporal ya no existe (se movio) o sobra (el contenido ya estaba guardado)
+        @Override
+        public void close() throws IOException {
+            try {
+                canal.close();
+            } finally {
+                Files.deleteIfExists(temporal);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.uma.example.springuma.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+// Almacen del contenido (comprimido) de las imagenes. Imagen solo guarda la referencia que devuelve guardar.
+// Se elige con imagen.store=database|filesystem. Lo que se guarda o borra dentro de una transaccion sigue
+// su resultado: si se deshace, ni queda contenido nuevo ni falta el borrado
+public interface ImageStore {
+
+    // Guarda el contenido bajo el hash de la imagen sin comprimir; si ya existe no se vuelve a escribir
+    String guardar(String hash, byte[] datos) throws IOException;
+
+    // Referencia con la que este almacen guarda el contenido de un hash (la que devuelven guardar y confirmar)
+    String getReferencia(String hash);
+
+    // Escritura en streaming, para cuando el hash solo se conoce al terminar de escribir (subidas)
+    Escritura nuevaEscritura() throws IOException;
+
+    InputStream abrir(String referencia) throws IOException;
+
+    // Contenido a partir de la posicion 'desde' (lecturas de rangos)
+    default InputStream abrir(String referencia, long desde) throws IOException {
+        InputStream contenido = abrir(referencia);
+        try {
+            contenido.skipNBytes(desde);
+            return contenido;
+        } catch (IOException | RuntimeException e) {
+            contenido.close();
+            throw e;
+        }
+    }
+
+    // Tamaño del contenido tal cual esta guardado
+    long getTamano(String referencia) throws IOException;
+
+    // Dentro de una transaccion, el contenido solo desaparece si esta se confirma
+    void borrar(String referencia) throws IOException;
+
+    // Hashes de todo el contenido guardado antes de 'antesDe' (ms), para que recolectar encuentre el que no
+    // usa ninguna imagen. No incluye el de transacciones sin terminar
+    List<String> listar(long antesDe) throws IOException;
+
+    boolean existe(String referencia);
+
+    // Fichero local con el contenido, para enviarlo sin copias (sendfile); null si el almacen no usa ficheros
+    default Path getFichero(String referencia) {
+        return null;
+    }
+
+    // Se escribe el contenido en getSalida() y al final se confirma con su hash, que devuelve la referencia
+    // como guardar. Cerrar sin confirmar descarta lo escrito
+    interface Escritura extends Closeable {
+
+        OutputStream getSalida();
+
+        String confirmar(String hash) throws IOException;
+    }
+}
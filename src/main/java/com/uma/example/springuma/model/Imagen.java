@@ -2,18 +2,27 @@ package com.uma.example.springuma.model;
 
 import java.util.Calendar;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Parameter;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import jakarta.persistence.*;
 
 @Entity
+// Las imagenes de un paciente se listan por id o por fecha y despues id (ver Pagina)
+@Table(indexes = {
+    @Index(name = "idx_imagen_paciente", columnList = "paciente_id, id"),
+    @Index(name = "idx_imagen_paciente_fecha", columnList = "paciente_id, fecha, id")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // para ignorar el serializador al devolver un objeto cuenta
 public class Imagen {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "imagen_seq")
+    @GenericGenerator(name = "imagen_seq", type = SecuenciaAgrupada.class,
+        parameters = @Parameter(name = "sequence_name", value = "imagen_seq"))
     private long id;
 
     @Column(name = "nombre")
@@ -35,17 +44,53 @@ public class Imagen {
     @JoinColumn(name = "paciente_id")
     private Paciente paciente;
 
-    @Lob
-    @Column(name = "file_content")
-    private byte[] file_content;
+    // El contenido vive en el ImageStore configurado; aqui solo su referencia y los datos para listar y cachear
+    @Column(name = "referencia")
+    private String referencia;
 
-    public byte[] getFile_content(){
-         return file_content;
-     }
+    // Tamaño en bytes de la imagen sin comprimir
+    @Column(name = "tamano")
+    private Long tamano;
 
-     public void setFile_content(byte[] file_content){
-         this.file_content = file_content;
-}
+    // SHA-256 (hex) de la imagen sin comprimir
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // Tipo de contenido con el que se subio la imagen (image/png, image/jpeg...)
+    @Column(name = "tipo_contenido")
+    private String tipoContenido;
+
+    public String getReferencia() {
+        return referencia;
+    }
+
+    public void setReferencia(String referencia) {
+        this.referencia = referencia;
+    }
+
+    public Long getTamano() {
+        return tamano;
+    }
+
+    public void setTamano(Long tamano) {
+        this.tamano = tamano;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getTipoContenido() {
+        return tipoContenido;
+    }
+
+    public void setTipoContenido(String tipoContenido) {
+        this.tipoContenido = tipoContenido;
+    }
 
     // Constructor vacío
     public Imagen() {
@@ -94,9 +139,9 @@ public class Imagen {
                 ", paciente=" + paciente +
                 '}';
     }
-    public Imagen(byte[] file_content, Paciente paciente)
+    public Imagen(String nombre, Paciente paciente)
     {
-        this.file_content = file_content;
+        this.nombre = nombre;
         this.paciente = paciente;
     }
 
@@ -0,0 +1,7 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+
+// Proyeccion ligera de Imagen para los listados: metadatos sin el contenido
+public record ImagenInfo(long id, String nombre, Calendar fecha, Long pacienteId, Long tamano, String hash) {
+}
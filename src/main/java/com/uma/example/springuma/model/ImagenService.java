@@ -1,15 +1,35 @@
 package com.uma.example.springuma.model;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.uma.example.springuma.utils.CodecImagen;
+import com.uma.example.springuma.utils.FormatoBloques;
 import com.uma.example.springuma.utils.ImageUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class ImagenService {
@@ -17,8 +37,32 @@ public class ImagenService {
     @Autowired
     private RepositoryImagen repositoryImagen;
 
-    public List<Imagen> getAllImagenes() {
-        return repositoryImagen.findAll();
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private CompresionImagenes compresionImagenes;
+
+    @Autowired
+    private ReferenciasBlob referenciasBlob;
+
+    @Autowired
+    private PrediccionService prediccionService;
+
+    @Autowired
+    private PrediccionJobService prediccionJobService;
+
+    @Value("${prediccion.lote.paralelismo:4}")
+    private int paralelismoLote;
+
+    @Value("${prediccion.lote.max-imagenes:200}")
+    private int maxImagenesLote;
+
+    // Todas las imagenes, por paginas (ver Pagina)
+    public Listado<Imagen> getAllImagenes(Pagina pagina) {
+        Slice<Imagen> slice = repositoryImagen.findByIdGreaterThanOrderByIdAsc(
+            pagina.conCursor() ? pagina.despuesId() : Long.MIN_VALUE, pagina.pageable());
+        return Listado.de(slice, i -> pagina.cursor(i.getId(), null));
     }
 
     public Imagen getImagen(Long id) {
@@ -26,21 +70,110 @@ public class ImagenService {
     }
 
     public String getNewPrediccion(Long id) throws IOException, Exception{
-        Map<String, Double> response = 
-        ImagenAPIPredictor.query(ImageUtils.decompressImage(repositoryImagen.getReferenceById(id).getFile_content()));
-        System.out.println("resp");
-        System.out.println( response);
-        double score_0 = response.get("LABEL_0");
-        double score_1 = response.get("LABEL_1");
-        System.out.println("resp");
-        System.out.println( response);
-        String resulString;
-        if (score_0 > score_1){
-            resulString = "Not cancer (label 0),  score: " + score_0;
-        }else{
-            resulString = "Cancer (label 1), score: " + score_1;
-        }
-        return resulString;
+        // findById (y no getReferenceById): puede ejecutarse en un hilo del pool de predicciones, sin sesion abierta
+        Imagen imagen = repositoryImagen.findById(id).orElseThrow();
+        return PrediccionService.formatear(prediccionService.predecir(getHash(imagen), () -> getContenido(imagen)));
+    }
+
+    // Prediccion estructurada de la imagen, lista para guardar
+    public Prediccion getNewPrediccionDetallada(Long id) throws IOException, Exception {
+        Imagen imagen = repositoryImagen.findById(id).orElseThrow();
+        Prediccion prediccion = prediccionService.predecirDetalle(getHash(imagen), () -> getContenido(imagen));
+        prediccion.setImagen(imagen);
+        return prediccion;
+    }
+
+    // Bytes sin comprimir de la imagen; con el tamaño guardado se descomprime directamente sobre el array final
+    public byte[] getContenido(Imagen imagen) throws IOException {
+        if (imagen.getTamano() == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            downloadImage(imagen, out);
+            return out.toByteArray();
+        }
+        try (InputStream contenido = imageStore.abrir(imagen.getReferencia())) {
+            return ImageUtils.decompressImage(contenido.readAllBytes(), imagen.getTamano().intValue());
+        }
+    }
+
+    // Las imagenes anteriores a guardar el hash lo calculan a partir del contenido
+    private String getHash(Imagen imagen) throws IOException {
+        return imagen.getHash() != null ? imagen.getHash() : ImageUtils.hashImage(getContenido(imagen));
+    }
+
+    public PrediccionJob submitPrediccion(Long id) {
+        return prediccionJobService.submit(id, () -> getNewPrediccion(id));
+    }
+
+    public List<Long> getIdsLote(LotePrediccion lote) {
+        List<Long> ids = new ArrayList<>();
+        if (lote.getIds() != null) {
+            ids.addAll(lote.getIds());
+        }
+        if (lote.getPacienteId() != null) {
+            ids.addAll(repositoryImagen.findIdsByPacienteId(lote.getPacienteId()));
+        }
+        ids = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.size() > maxImagenesLote) {
+            throw new IllegalArgumentException("El lote supera el maximo de " + maxImagenesLote + " imagenes");
+        }
+        return ids;
+    }
+
+    // Predice todas las imagenes del lote con como mucho prediccion.lote.paralelismo en curso a la vez.
+    // Cada resultado se entrega a alTerminar segun va terminando; imagenes con los mismos bytes
+    // comparten una unica llamada al modelo.
+    public CompletableFuture<Void> predecirLote(List<Long> ids, Consumer<ResultadoPrediccion> alTerminar) {
+        CompletableFuture<Void> fin = new CompletableFuture<>();
+        if (ids.isEmpty()) {
+            fin.complete(null);
+            return fin;
+        }
+        Queue<Long> pendientes = new ConcurrentLinkedQueue<>(ids);
+        AtomicInteger restantes = new AtomicInteger(ids.size());
+        Map<String, CompletableFuture<String>> porHash = new ConcurrentHashMap<>();
+
+        Runnable lanzarSiguiente = new Runnable() {
+            @Override
+            public void run() {
+                Long id = pendientes.poll();
+                if (id == null) {
+                    return;
+                }
+                prediccionJobService.ejecutar(() -> predecirEnLote(id, porHash))
+                    .thenCompose(Function.identity())
+                    .whenComplete((prediccion, e) -> {
+                        Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        alTerminar.accept(causa == null
+                            ? ResultadoPrediccion.ok(id, prediccion)
+                            : ResultadoPrediccion.error(id, "Error al realizar la prediccion: " + causa.getMessage()));
+                        if (restantes.decrementAndGet() == 0) {
+                            fin.complete(null);
+                        }
+                        run();
+                    });
+            }
+        };
+        for (int i = 0; i < Math.min(paralelismoLote, ids.size()); i++) {
+            lanzarSiguiente.run();
+        }
+        return fin;
+    }
+
+    private CompletableFuture<String> predecirEnLote(Long id, Map<String, CompletableFuture<String>> porHash) throws Exception {
+        Imagen imagen = repositoryImagen.findById(id).orElseThrow();
+        String hash = getHash(imagen);
+        CompletableFuture<String> nueva = new CompletableFuture<>();
+        CompletableFuture<String> existente = porHash.putIfAbsent(hash, nueva);
+        if (existente != null) {
+            // Mismos bytes que otra imagen del lote: se reutiliza su prediccion sin ocupar el hilo
+            return existente;
+        }
+        try {
+            nueva.complete(PrediccionService.formatear(prediccionService.predecir(hash, () -> getContenido(imagen))));
+        } catch (Exception e) {
+            nueva.completeExceptionally(e);
+        }
+        return nueva;
     }
 
     public Imagen addImagen(Imagen imagen) {
@@ -55,18 +188,49 @@ public class ImagenService {
         repositoryImagen.delete(imagen);
     }
 
-    public void removeImagenByID(Long id) {
+    // El contenido se comparte entre imagenes con los mismos bytes: se borra del almacen con la ultima que lo usa
+    @Transactional
+    public void removeImagenByID(Long id) throws IOException {
+        Imagen imagen = repositoryImagen.findById(id).orElse(null);
         repositoryImagen.deleteById(id);
+        if (imagen != null && imagen.getHash() != null && imagen.getReferencia() != null) {
+            referenciasBlob.decrementar(imagen.getHash(), imagen.getReferencia());
+        }
     }
 
-    public List<Imagen> getImagenesPaciente(Long id) {
-        return repositoryImagen.getByPacienteId(id);
+    public Listado<ImagenInfo> getImagenesPaciente(Long id, Pagina pagina) {
+        Slice<ImagenInfo> slice;
+        if (pagina.orden() == Pagina.Orden.FECHA) {
+            slice = pagina.conCursor()
+                ? repositoryImagen.findInfoByPacienteIdPorFecha(id, pagina.despuesFecha(), pagina.despuesId(), pagina.pageable())
+                : repositoryImagen.findInfoByPacienteIdPorFecha(id, pagina.pageable());
+        } else {
+            slice = repositoryImagen.findInfoByPacienteId(id, pagina.conCursor() ? pagina.despuesId() : Long.MIN_VALUE, pagina.pageable());
+        }
+        return Listado.de(slice, i -> pagina.cursor(i.id(), i.fecha()));
     }
 
+    // El fichero se lee una sola vez como stream y llega comprimido al almacen: ni la imagen ni su version
+    // comprimida se tienen enteras en memoria (la parte multipart ya esta en disco, ver spring.servlet.multipart).
+    // Si ya habia una imagen con los mismos bytes, se reutiliza su contenido y solo se suma una referencia
+    @Transactional
     public String uploadImage(MultipartFile file, Paciente paciente) throws IOException {
+        String tipo = getTipoContenido(file);
+        CompresionImagenes.Comprimido comprimido;
+        String referencia;
+        try (InputStream entrada = file.getInputStream(); ImageStore.Escritura escritura = imageStore.nuevaEscritura()) {
+            comprimido = compresionImagenes.comprimir(entrada, tipo, escritura.getSalida());
+            // primero el contador (bloquea la fila del hash) y despues el contenido: un borrado concurrente
+            // de la ultima imagen con estos bytes no puede llevarse el contenido que se acaba de reutilizar
+            referenciasBlob.incrementar(comprimido.hash());
+            referencia = escritura.confirmar(comprimido.hash());
+        }
         Imagen imagen = new Imagen();
         imagen.setNombre(file.getOriginalFilename());
-        imagen.setFile_content(ImageUtils.compressImage(file.getBytes()));
+        imagen.setTamano(comprimido.tamano());
+        imagen.setHash(comprimido.hash());
+        imagen.setTipoContenido(tipo);
+        imagen.setReferencia(referencia);
         imagen.setPaciente(paciente);
         imagen.setFecha(Calendar.getInstance());
         imagen = repositoryImagen.saveAndFlush(imagen);
@@ -76,10 +240,79 @@ public class ImagenService {
         return null;
     }
 
-    public byte[] downloadImage(long id) {
-        Imagen dbImageData = repositoryImagen.getReferenceById(id);
-        byte[] images = ImageUtils.decompressImage(dbImageData.getFile_content());
-        return images;
+    // El tipo declarado en la subida; si no viene o es generico, se deduce de la extension del fichero
+    private String getTipoContenido(MultipartFile file) {
+        String tipo = file.getContentType();
+        if (tipo == null || tipo.startsWith("application/octet-stream")) {
+            String deducido = file.getOriginalFilename() != null ? URLConnection.guessContentTypeFromName(file.getOriginalFilename()) : null;
+            return deducido != null ? deducido : tipo;
+        }
+        return tipo;
+    }
+
+    // Tipo con el que se subio; las imagenes anteriores a guardarlo lo deducen del nombre (o eran PNG)
+    public String getTipoContenido(Imagen imagen) {
+        if (imagen.getTipoContenido() != null) {
+            return imagen.getTipoContenido();
+        }
+        String deducido = imagen.getNombre() != null ? URLConnection.guessContentTypeFromName(imagen.getNombre()) : null;
+        return deducido != null ? deducido : "image/png";
+    }
+
+    public Imagen findImagen(long id) {
+        return repositoryImagen.findById(id).orElse(null);
+    }
+
+    // Fichero con el contenido comprimido tal cual esta guardado, si el almacen es de ficheros
+    public Path getFicheroImagen(Imagen imagen) {
+        return imagen.getReferencia() != null ? imageStore.getFichero(imagen.getReferencia()) : null;
+    }
+
+    // Formato del contenido guardado, segun su primer byte
+    public CodecImagen getCodec(Imagen imagen) throws IOException {
+        try (InputStream contenido = imageStore.abrir(imagen.getReferencia())) {
+            return CodecImagen.deCabecera(contenido.read());
+        }
+    }
+
+    // Copia de rangos del contenido sin comprimir
+    @FunctionalInterface
+    public interface LectorRangos {
+        void copiar(long desde, long longitud, OutputStream out) throws IOException;
+    }
+
+    // Sin comprimir se lee directamente desde la posicion del rango; por bloques se lee el indice una vez
+    // y cada rango solo descomprime sus bloques. Las imagenes comprimidas en un solo bloque (pequeñas o
+    // anteriores a FormatoBloques) se descomprimen desde el principio hasta llegar al rango
+    public LectorRangos getLectorRangos(Imagen imagen) throws IOException {
+        String referencia = imagen.getReferencia();
+        switch (getCodec(imagen)) {
+            case NINGUNO:
+                return (desde, longitud, out) -> {
+                    try (InputStream contenido = imageStore.abrir(referencia, 1 + desde)) {
+                        ImageUtils.copy(contenido, out, longitud);
+                    }
+                };
+            case BLOQUES:
+                FormatoBloques.Lector lector = posicion -> imageStore.abrir(referencia, posicion);
+                FormatoBloques.Indice indice = FormatoBloques.leerIndice(lector, imageStore.getTamano(referencia));
+                return (desde, longitud, out) -> FormatoBloques.copiarRango(indice, lector, desde, longitud, out);
+            default:
+                return (desde, longitud, out) -> {
+                    try (InputStream contenido = ImageUtils.abrirDescomprimido(imageStore.abrir(referencia))) {
+                        contenido.skipNBytes(desde);
+                        ImageUtils.copy(contenido, out, longitud);
+                    }
+                };
+        }
+    }
+
+    // Lee el contenido del almacen como stream y lo descomprime sobre la salida con un buffer fijo:
+    // la memoria por descarga no depende del tamaño de la imagen
+    public void downloadImage(Imagen imagen, OutputStream out) throws IOException {
+        try (InputStream contenido = imageStore.abrir(imagen.getReferencia())) {
+            ImageUtils.decompressImage(contenido, out);
+        }
     }
 
 }
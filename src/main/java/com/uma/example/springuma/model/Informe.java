@@ -1,29 +1,42 @@
 package com.uma.example.springuma.model;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Parameter;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(name = "idx_informe_imagen", columnList = "imagen_id, id"))
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Informe {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "informe_seq")
+    @GenericGenerator(name = "informe_seq", type = SecuenciaAgrupada.class,
+        parameters = @Parameter(name = "sequence_name", value = "informe_seq"))
     private long id;
 
+    // Texto de la prediccion (derivado de resultado), o Pendiente / el error mientras no hay resultado
     @Column(name = "prediccion")
     private String prediccion;
 
+    // Resultado estructurado de la ultima prediccion del informe
+    @ManyToOne()
+    @OnDelete(action = OnDeleteAction.SET_NULL)
+    @JoinColumn(name = "resultado_id")
+    private Prediccion resultado;
+
     @Column(name = "contenido", columnDefinition = "TEXT")
     private String contenido;
 
@@ -57,6 +70,14 @@ public class Informe {
         this.prediccion = prediccion;
     }
 
+    public Prediccion getResultado() {
+        return resultado;
+    }
+
+    public void setResultado(Prediccion resultado) {
+        this.resultado = resultado;
+    }
+
     public String getContenido() {
         return contenido;
     }
@@ -1,56 +1,75 @@
 package com.uma.example.springuma.model;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
-import com.uma.example.springuma.utils.ImageUtils;
-
-import java.util.Map;
-
 
 @Service
 public class InformeService {
 
+    public static final String PREDICCION_PENDIENTE = "Pendiente";
+
     @Autowired
     private RepositoryInforme repositoryInforme;
 
     @Autowired
-    private RepositoryImagen repositoryImage;
+    private ImagenService imagenService;
+
+    @Autowired
+    private PrediccionJobService prediccionJobService;
+
+    @Autowired
+    private PrediccionService prediccionService;
 
-    public List<Informe> getAllInformes() {
-        return repositoryInforme.findAll();
+    // Todos los informes, por paginas (ver Pagina)
+    public Listado<Informe> getAllInformes(Pagina pagina) {
+        Slice<Informe> slice = repositoryInforme.findByIdGreaterThanOrderByIdAsc(
+            pagina.conCursor() ? pagina.despuesId() : Long.MIN_VALUE, pagina.pageable());
+        return Listado.de(slice, i -> pagina.cursor(i.getId(), null));
     }
 
     public Informe getInforme(Long id) {
         return repositoryInforme.findById(id).orElse(null);
     }
 
-    
-    public Informe addInforme(Informe informe) throws IOException, Exception {
-        String neew_pred = getNewPrediccion(informe);
-        //double neew_pred = Math.random();
-        System.out.println(neew_pred);
-        informe.setPrediccion(((neew_pred)));
-
-        return repositoryInforme.saveAndFlush(informe);
+    // El informe se guarda en el momento con la prediccion pendiente; el job la rellena al terminar
+    public Informe addInforme(Informe informe) {
+        informe.setPrediccion(PREDICCION_PENDIENTE);
+        informe.setResultado(null);
+        Informe guardado = repositoryInforme.saveAndFlush(informe);
+        submitPrediccion(guardado);
+        return guardado;
     }
-    
 
-    
-    public void updateInforme(Informe informe) throws IOException, Exception {
-        // Puedes implementar la lógica de actualización según tus necesidades
-        // Aquí se muestra un ejemplo básico:
+    public void updateInforme(Informe informe) {
         Informe existingInforme = repositoryInforme.findById(informe.getId()).orElse(null);
         if (existingInforme != null) {
-            existingInforme.setPrediccion(getNewPrediccion(existingInforme));
+            existingInforme.setPrediccion(PREDICCION_PENDIENTE);
+            existingInforme.setResultado(null);
             existingInforme.setContenido(informe.getContenido());
             repositoryInforme.save(existingInforme);
+            submitPrediccion(existingInforme);
+        }
+    }
+
+    private void submitPrediccion(Informe informe) {
+        long id = informe.getId();
+        try {
+            // el resultado lo guarda el propio job; aqui solo queda anotar el error
+            PrediccionJob job = prediccionJobService.submit(informe.getImagen().getId(), () -> getNewPrediccion(informe));
+            job.getResultado().whenComplete((prediccion, error) -> {
+                if (error != null) {
+                    repositoryInforme.updatePrediccion(id, "Error al realizar la prediccion: " + error.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            repositoryInforme.updatePrediccion(id, "Error al realizar la prediccion: servicio saturado");
         }
     }
-    
 
     public void removeInforme(Informe informe) {
         repositoryInforme.delete(informe);
@@ -60,29 +79,19 @@ public class InformeService {
         repositoryInforme.deleteById(id);
     }
 
-    public List<Informe> getInformesImagen(Long id) {
-        return repositoryInforme.findByImagenId(id);
+    public Listado<Informe> getInformesImagen(Long id, Pagina pagina) {
+        Slice<Informe> slice = pagina.conCursor()
+            ? repositoryInforme.findByImagenIdAndIdGreaterThanOrderByIdAsc(id, pagina.despuesId(), pagina.pageable())
+            : repositoryInforme.findByImagenIdOrderByIdAsc(id, pagina.pageable());
+        return Listado.de(slice, i -> pagina.cursor(i.getId(), null));
     }
 
     
+    // Guarda la prediccion estructurada y la enlaza al informe junto con su texto
     public String getNewPrediccion(Informe informe) throws IOException, Exception{
-        Map<String, Double> response =  ImagenAPIPredictor
-        .query(ImageUtils.decompressImage(repositoryImage.getReferenceById(informe.getImagen().getId())
-        .getFile_content()));
-        //informe.setPrediccion((String)response.get("0"));
-        System.out.println("resp");
-        System.out.println( response);
-        double score_0 = response.get("LABEL_0");
-        double score_1 = response.get("LABEL_1");
-        System.out.println("resp");
-        System.out.println( response);
-        String resulString;
-        if (score_0 > score_1){
-            resulString = "Not cancer (label 0),  score: " + score_0;
-        }else{
-            resulString = "Cancer (label 1), score: " + score_1;
-        }
-        return resulString;
+        Prediccion prediccion = prediccionService.guardar(imagenService.getNewPrediccionDetallada(informe.getImagen().getId()));
+        repositoryInforme.updateResultado(informe.getId(), prediccion.getTexto(), prediccion);
+        return prediccion.getTexto();
     }
     
 }
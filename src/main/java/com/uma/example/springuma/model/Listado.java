@@ -0,0 +1,16 @@
+package com.uma.example.springuma.model;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Slice;
+
+// Una pagina de un listado y el cursor para pedir la siguiente (null si es la ultima)
+public record Listado<T>(List<T> elementos, String siguiente) {
+
+    public static <T> Listado<T> de(Slice<T> slice, Function<T, String> cursor) {
+        List<T> elementos = slice.getContent();
+        String siguiente = slice.hasNext() && !elementos.isEmpty() ? cursor.apply(elementos.get(elementos.size() - 1)) : null;
+        return new Listado<>(elementos, siguiente);
+    }
+}
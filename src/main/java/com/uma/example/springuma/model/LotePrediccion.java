@@ -0,0 +1,35 @@
+package com.uma.example.springuma.model;
+
+import java.util.List;
+
+// Peticion de prediccion en lote: una lista de imagenes o todas las de un paciente
+public class LotePrediccion {
+
+    private List<Long> ids;
+
+    private Long pacienteId;
+
+    public LotePrediccion() {
+    }
+
+    public LotePrediccion(List<Long> ids, Long pacienteId) {
+        this.ids = ids;
+        this.pacienteId = pacienteId;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public Long getPacienteId() {
+        return pacienteId;
+    }
+
+    public void setPacienteId(Long pacienteId) {
+        this.pacienteId = pacienteId;
+    }
+}
@@ -0,0 +1,91 @@
+package com.uma.example.springuma.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.uma.example.springuma.utils.ImageUtils;
+
+// Lleva al ImageStore configurado el contenido que aun este en la base de datos:
+//  - al arrancar, siempre, el de formatos antiguos (columna imagen.file_content y tabla imagen_contenido),
+//    y se crean los contadores de blob_referencias que falten
+//  - con la opcion --migrar-imagenes, tambien la tabla blob_imagen cuando el almacen es de ficheros;
+//    en ese caso la aplicacion termina al acabar la migracion
+@Component
+public class MigracionContenidoImagenes implements ApplicationRunner {
+
+    public static final String OPCION = "migrar-imagenes";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private ReferenciasBlob referenciasBlob;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (existeColumna("IMAGEN", "FILE_CONTENT")) {
+            migrar("select id, file_content from imagen where referencia is null and file_content is not null");
+            jdbcTemplate.execute("alter table imagen drop column file_content");
+        }
+        if (existeTabla("IMAGEN_CONTENIDO")) {
+            migrar("select c.imagen_id, c.datos from imagen_contenido c join imagen i on i.id = c.imagen_id where i.referencia is null");
+            jdbcTemplate.execute("drop table imagen_contenido");
+        }
+        referenciasBlob.reconstruir();
+        if (args.containsOption(OPCION)) {
+            int migradas = 0;
+            if (!(imageStore instanceof DatabaseImageStore)) {
+                migradas = migrar("select i.id, b.datos from imagen i join blob_imagen b on b.clave = i.referencia");
+                jdbcTemplate.update("delete from blob_imagen b where not exists (select 1 from imagen i where i.referencia = b.clave)");
+            }
+            System.out.println("Imagenes migradas a " + imageStore.getClass().getSimpleName() + ": " + migradas);
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+    // La consulta devuelve (id de imagen, contenido comprimido); se guarda en el almacen y se apunta la imagen a el
+    private int migrar(String consulta) {
+        int[] migradas = {0};
+        jdbcTemplate.query(consulta, rs -> {
+            long id = rs.getLong(1);
+            byte[] comprimido = rs.getBytes(2);
+            byte[] datos = ImageUtils.decompressImage(comprimido);
+            String hash = ImageUtils.hashImage(datos);
+            try {
+                String referencia = imageStore.guardar(hash, comprimido);
+                jdbcTemplate.update("update imagen set referencia = ?, hash = ?, tamano = ? where id = ?",
+                    referencia, hash, datos.length, id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            migradas[0]++;
+        });
+        return migradas[0];
+    }
+
+    private boolean existeColumna(String tabla, String columna) {
+        Integer n = jdbcTemplate.queryForObject("select count(*) from information_schema.columns"
+            + " where upper(table_name) = ? and upper(column_name) = ? and upper(table_schema) = 'PUBLIC'", Integer.class, tabla, columna);
+        return n != null && n > 0;
+    }
+
+    private boolean existeTabla(String tabla) {
+        Integer n = jdbcTemplate.queryForObject("select count(*) from information_schema.tables"
+            + " where upper(table_name) = ? and upper(table_schema) = 'PUBLIC'", Integer.class, tabla);
+        return n != null && n > 0;
+    }
+}
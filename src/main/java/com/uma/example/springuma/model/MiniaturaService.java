@@ -0,0 +1,171 @@
+package com.uma.example.springuma.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.uma.example.springuma.utils.CodecImagen;
+import com.uma.example.springuma.utils.ImageUtils;
+
+import jakarta.annotation.PostConstruct;
+
+// Miniaturas y vistas previas (PNG reducidos) de las imagenes. Se generan la primera vez que se piden y se
+// guardan en el ImageStore junto al original, con una clave derivada del hash del contenido y del ancho:
+// imagenes con los mismos bytes comparten miniaturas. Las mas usadas se sirven de una cache LRU en memoria
+// acotada en bytes (imagen.miniatura.cache-bytes)
+@Service
+public class MiniaturaService {
+
+    // Anchos admitidos para /thumbnail; el pedido se ajusta al siguiente, para acotar las variantes guardadas
+    @Value("${imagen.miniatura.anchos:64,128,256,512}")
+    private int[] anchos;
+
+    @Value("${imagen.preview.ancho:1024}")
+    private int anchoPreview;
+
+    @Value("${imagen.miniatura.cache-bytes:16MB}")
+    private DataSize maxBytesCache;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong aciertosAlmacen = new AtomicLong();
+    private final AtomicLong generadas = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    // accessOrder = true: el orden de iteracion es LRU
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytesCache;
+
+    @PostConstruct
+    public void init() {
+        Arrays.sort(anchos);
+    }
+
+    public int ajustarAncho(int ancho) {
+        for (int admitido : anchos) {
+            if (admitido >= ancho) {
+                return admitido;
+            }
+        }
+        return anchos[anchos.length - 1];
+    }
+
+    public byte[] getMiniatura(Imagen imagen, int ancho) throws IOException {
+        return getReducida(imagen, ajustarAncho(ancho));
+    }
+
+    public byte[] getPreview(Imagen imagen) throws IOException {
+        return getReducida(imagen, anchoPreview);
+    }
+
+    // PNG reducido a 'ancho'; null si el contenido no es una imagen que se pueda decodificar
+    private byte[] getReducida(Imagen imagen, int ancho) throws IOException {
+        String clave = clave(imagen.getHash(), ancho);
+        byte[] png = getCache(clave);
+        if (png != null) {
+            aciertos.incrementAndGet();
+            return png;
+        }
+        String referencia = imageStore.getReferencia(clave);
+        if (imageStore.existe(referencia)) {
+            try (InputStream guardada = ImageUtils.abrirDescomprimido(imageStore.abrir(referencia))) {
+                png = guardada.readAllBytes();
+            }
+            aciertosAlmacen.incrementAndGet();
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream original = ImageUtils.abrirDescomprimido(imageStore.abrir(imagen.getReferencia()))) {
+                if (!ImageUtils.escalarImagen(original, ancho, out)) {
+                    return null;
+                }
+            }
+            png = out.toByteArray();
+            // ya es PNG: se guarda sin volver a comprimir
+            imageStore.guardar(clave, ImageUtils.compressImage(png, CodecImagen.NINGUNO, 0));
+            generadas.incrementAndGet();
+        }
+        putCache(clave, png);
+        return png;
+    }
+
+    // Se llama al borrar el contenido original (ultima imagen con esos bytes)
+    public void borrar(String hash) throws IOException {
+        for (String clave : getClaves(hash)) {
+            borrarVariante(clave);
+        }
+    }
+
+    // Claves en el ImageStore de todas las variantes que puede tener un contenido
+    public List<String> getClaves(String hash) {
+        List<String> claves = new ArrayList<>(anchos.length + 1);
+        for (int ancho : anchos) {
+            claves.add(clave(hash, ancho));
+        }
+        claves.add(clave(hash, anchoPreview));
+        return claves;
+    }
+
+    private void borrarVariante(String clave) throws IOException {
+        synchronized (this) {
+            byte[] png = cache.remove(clave);
+            if (png != null) {
+                bytesCache -= png.length;
+            }
+        }
+        imageStore.borrar(imageStore.getReferencia(clave));
+    }
+
+    public Map<String, Long> getEstadisticas() {
+        Map<String, Long> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("aciertosAlmacen", aciertosAlmacen.get());
+        estadisticas.put("generadas", generadas.get());
+        estadisticas.put("desalojos", desalojos.get());
+        synchronized (this) {
+            estadisticas.put("entradas", (long) cache.size());
+            estadisticas.put("bytes", bytesCache);
+        }
+        return estadisticas;
+    }
+
+    // Las variantes se guardan como cualquier otro contenido, direccionadas por un hash de (hash original, ancho)
+    private static String clave(String hash, int ancho) {
+        byte[] derivada = ImageUtils.sha256().digest((hash + ":w" + ancho).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(derivada);
+    }
+
+    private synchronized byte[] getCache(String clave) {
+        return cache.get(clave);
+    }
+
+    private synchronized void putCache(String clave, byte[] png) {
+        if (png.length > maxBytesCache.toBytes()) {
+            return;
+        }
+        byte[] anterior = cache.put(clave, png);
+        bytesCache += png.length - (anterior != null ? anterior.length : 0);
+        Iterator<byte[]> lru = cache.values().iterator();
+        while (bytesCache > maxBytesCache.toBytes() && lru.hasNext()) {
+            bytesCache -= lru.next().length;
+            lru.remove();
+            desalojos.incrementAndGet();
+        }
+    }
+}
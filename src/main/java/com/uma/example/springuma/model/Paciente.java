@@ -2,19 +2,25 @@ package com.uma.example.springuma.model;
 
 import java.io.Serializable;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Parameter;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import jakarta.persistence.*;
 
 @Entity
+// Los pacientes de un medico se listan por id (ver Pagina): el indice lleva los dos para no ordenar
+@Table(indexes = @Index(name = "idx_paciente_medico", columnList = "medico_id, id"))
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"}) // para ignorar el serializador al devolver un objeto cuenta
 public class Paciente implements Serializable{
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "paciente_seq")
+    @GenericGenerator(name = "paciente_seq", type = SecuenciaAgrupada.class,
+        parameters = @Parameter(name = "sequence_name", value = "paciente_seq"))
     private long id;
 
     @Column(name = "nombre")
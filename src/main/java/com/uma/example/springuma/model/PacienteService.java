@@ -3,6 +3,7 @@ package com.uma.example.springuma.model;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -11,8 +12,11 @@ public class PacienteService {
     @Autowired
     RepositoryPaciente repositoryPaciente; // Cambio el nombre y tipo del repositorio
 
-    public List<Paciente> getAllPacientes(){
-        return repositoryPaciente.findAll(); // Cambio el método para devolver una lista de Pacientes
+    // Todos los pacientes, por paginas (ver Pagina)
+    public Listado<Paciente> getAllPacientes(Pagina pagina){
+        Slice<Paciente> slice = repositoryPaciente.findByIdGreaterThanOrderByIdAsc(
+            pagina.conCursor() ? pagina.despuesId() : Long.MIN_VALUE, pagina.pageable());
+        return Listado.de(slice, p -> pagina.cursor(p.getId(), null));
     }
 
     public Paciente getPaciente(Long id){
@@ -23,6 +27,12 @@ public class PacienteService {
         return repositoryPaciente.saveAndFlush(p); // Cambio el tipo de argumento y retorno a Paciente
     }
 
+    // Alta de muchos pacientes en una sola transaccion: los ids salen de la secuencia por bloques y las
+    // inserciones van en lotes JDBC al confirmar, en vez de una ida y vuelta por paciente
+    public List<Paciente> addPacientes(List<Paciente> pacientes){
+        return repositoryPaciente.saveAll(pacientes);
+    }
+
     public void updatePaciente(Paciente p){
         /*Paciente paciente = repositoryPaciente.getReferenceById(p.getId());
         // Aquí podrías actualizar los campos específicos del paciente
@@ -42,7 +52,10 @@ public class PacienteService {
         repositoryPaciente.deleteById(id); // Cambio a eliminar un Paciente por ID
     }
 
-    public List<Paciente> getPacientesMedico(Long id) {
-        return repositoryPaciente.findByMedicoId(id);
+    public Listado<Paciente> getPacientesMedico(Long id, Pagina pagina) {
+        Slice<Paciente> slice = pagina.conCursor()
+            ? repositoryPaciente.findByMedicoIdAndIdGreaterThanOrderByIdAsc(id, pagina.despuesId(), pagina.pageable())
+            : repositoryPaciente.findByMedicoIdOrderByIdAsc(id, pagina.pageable());
+        return Listado.de(slice, p -> pagina.cursor(p.getId(), null));
     }
 }
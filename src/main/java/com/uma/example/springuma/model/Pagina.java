@@ -0,0 +1,62 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+// Pagina pedida de un listado. Con cursor (keyset) la consulta empieza justo despues del ultimo elemento de
+// la pagina anterior, asi que una pagina profunda cuesta lo mismo que la primera; numero (offset) se deja
+// para saltar a una pagina concreta. El orden siempre acaba en el id, para que sea estable entre paginas.
+// Cursor: el id del ultimo elemento, o "fecha_id" (fecha en ms) si se ordena por fecha
+public record Pagina(int tamano, int numero, Orden orden, Long despuesId, Calendar despuesFecha) {
+
+    public enum Orden { ID, FECHA }
+
+    public static Pagina de(String cursor, Integer numero, Integer tamano, String orden, int tamanoDefecto, int tamanoMaximo) {
+        int t = tamano != null ? tamano : tamanoDefecto;
+        if (t <= 0 || t > tamanoMaximo) {
+            throw new IllegalArgumentException("El tamano de pagina debe estar entre 1 y " + tamanoMaximo);
+        }
+        Orden o;
+        try {
+            o = orden != null ? Orden.valueOf(orden.toUpperCase()) : Orden.ID;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Orden no valido: " + orden);
+        }
+        if (cursor != null && numero != null) {
+            throw new IllegalArgumentException("Se pide la pagina por cursor o por numero, no por los dos");
+        }
+        if (numero != null && numero < 0) {
+            throw new IllegalArgumentException("Numero de pagina no valido: " + numero);
+        }
+        if (cursor == null || cursor.isBlank()) {
+            return new Pagina(t, numero != null ? numero : 0, o, null, null);
+        }
+        try {
+            if (o == Orden.FECHA) {
+                int separador = cursor.indexOf('_');
+                Calendar fecha = Calendar.getInstance();
+                fecha.setTimeInMillis(Long.parseLong(cursor.substring(0, separador)));
+                return new Pagina(t, 0, o, Long.parseLong(cursor.substring(separador + 1)), fecha);
+            }
+            return new Pagina(t, 0, o, Long.parseLong(cursor), null);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursor no valido: " + cursor);
+        }
+    }
+
+    public boolean conCursor() {
+        return despuesId != null;
+    }
+
+    // Con cursor siempre la primera pagina de la consulta que empieza en el; sin el, la pagina numero.
+    // El orden lo pone cada consulta
+    public Pageable pageable() {
+        return PageRequest.of(numero, tamano);
+    }
+
+    public String cursor(long id, Calendar fecha) {
+        return orden == Orden.FECHA ? fecha.getTimeInMillis() + "_" + id : String.valueOf(id);
+    }
+}
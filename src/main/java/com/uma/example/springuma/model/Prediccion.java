@@ -0,0 +1,184 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+import java.util.Map;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+
+// Resultado de una prediccion tal como lo devolvio el modelo, con columnas numericas para poder consultarlo
+// y agregarlo sin volver a llamar al modelo ni interpretar el texto. El texto para mostrar se deriva de aqui
+@Entity
+@Table(name = "prediccion", indexes = {
+    @Index(name = "idx_prediccion_imagen", columnList = "imagen_id"),
+    @Index(name = "idx_prediccion_etiqueta", columnList = "etiqueta, puntuacion_cancer"),
+    @Index(name = "idx_prediccion_fecha", columnList = "fecha")
+})
+@JsonIgnoreProperties(value = {"hibernateLazyInitializer", "handler", "texto", "imagenId"}, allowGetters = true)
+public class Prediccion {
+
+    public static final String SIN_CANCER = "LABEL_0";
+    public static final String CANCER = "LABEL_1";
+
+    @Id
+    @GeneratedValue(generator = "prediccion_seq")
+    @GenericGenerator(name = "prediccion_seq", type = SecuenciaAgrupada.class,
+        parameters = @Parameter(name = "sequence_name", value = "prediccion_seq"))
+    private long id;
+
+    @ManyToOne()
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JoinColumn(name = "imagen_id")
+    @JsonIgnore
+    private Imagen imagen;
+
+    // Etiqueta con mayor puntuacion
+    @Column(name = "etiqueta", length = 16)
+    private String etiqueta;
+
+    @Column(name = "puntuacion_sin_cancer")
+    private double puntuacionSinCancer;
+
+    @Column(name = "puntuacion_cancer")
+    private double puntuacionCancer;
+
+    @Column(name = "modelo")
+    private String modelo;
+
+    // Tiempo hasta tener el resultado, incluida la espera por la cache, el lote o los reintentos
+    @Column(name = "latencia_ms")
+    private long latenciaMs;
+
+    // Sin llamada propia al modelo: salio de la cache o de otra prediccion igual en curso
+    @Column(name = "cacheada")
+    private boolean cacheada;
+
+    @Column(name = "fecha")
+    private Calendar fecha;
+
+    // Hash del contenido de la imagen que se envio al modelo
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    public Prediccion() {
+        // Constructor vacío necesario para JPA
+    }
+
+    public Prediccion(Map<String, Double> puntuaciones, String modelo, long latenciaMs, boolean cacheada, String hash) {
+        this.puntuacionSinCancer = puntuaciones.get(SIN_CANCER);
+        this.puntuacionCancer = puntuaciones.get(CANCER);
+        this.etiqueta = puntuacionSinCancer > puntuacionCancer ? SIN_CANCER : CANCER;
+        this.modelo = modelo;
+        this.latenciaMs = latenciaMs;
+        this.cacheada = cacheada;
+        this.hash = hash;
+        this.fecha = Calendar.getInstance();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Imagen getImagen() {
+        return imagen;
+    }
+
+    public void setImagen(Imagen imagen) {
+        this.imagen = imagen;
+    }
+
+    public Long getImagenId() {
+        return imagen != null ? imagen.getId() : null;
+    }
+
+    public String getEtiqueta() {
+        return etiqueta;
+    }
+
+    public void setEtiqueta(String etiqueta) {
+        this.etiqueta = etiqueta;
+    }
+
+    public double getPuntuacionSinCancer() {
+        return puntuacionSinCancer;
+    }
+
+    public void setPuntuacionSinCancer(double puntuacionSinCancer) {
+        this.puntuacionSinCancer = puntuacionSinCancer;
+    }
+
+    public double getPuntuacionCancer() {
+        return puntuacionCancer;
+    }
+
+    public void setPuntuacionCancer(double puntuacionCancer) {
+        this.puntuacionCancer = puntuacionCancer;
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+
+    public void setModelo(String modelo) {
+        this.modelo = modelo;
+    }
+
+    public long getLatenciaMs() {
+        return latenciaMs;
+    }
+
+    public void setLatenciaMs(long latenciaMs) {
+        this.latenciaMs = latenciaMs;
+    }
+
+    public boolean isCacheada() {
+        return cacheada;
+    }
+
+    public void setCacheada(boolean cacheada) {
+        this.cacheada = cacheada;
+    }
+
+    public Calendar getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(Calendar fecha) {
+        this.fecha = fecha;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    // El mismo texto que se guardaba antes en Informe.prediccion
+    public String getTexto() {
+        return PrediccionService.formatear(Map.of(SIN_CANCER, puntuacionSinCancer, CANCER, puntuacionCancer));
+    }
+
+    public String toString() {
+        return "Prediccion = " + getTexto() + "; modelo = " + modelo + " imagen = " + getImagenId();
+    }
+}
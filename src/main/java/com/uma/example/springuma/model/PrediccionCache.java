@@ -0,0 +1,148 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+// Cache de resultados del modelo direccionada por contenido: la clave es (modelo, hash de los bytes
+// de la imagen), asi que la misma imagen subida para distintos pacientes comparte la entrada.
+// Nivel en memoria LRU acotado por numero de entradas y TTL; nivel persistente opcional en la base de datos.
+@Component
+public class PrediccionCache {
+
+    @Value("${prediccion.cache.max-entradas:1000}")
+    private int maxEntradas;
+
+    @Value("${prediccion.cache.ttl-segundos:86400}")
+    private long ttlSegundos;
+
+    @Value("${prediccion.cache.persistente:false}")
+    private boolean persistente;
+
+    @Autowired
+    private RepositoryPrediccionCacheada repositoryPrediccionCacheada;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong aciertosPersistentes = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+    private final AtomicLong expiradas = new AtomicLong();
+
+    private Map<String, Entrada> entradas;
+
+    private record Entrada(Map<String, Double> resultado, long expira) {}
+
+    @PostConstruct
+    public void init() {
+        // accessOrder = true: el orden de iteracion es LRU y la entrada mas antigua es la menos usada
+        entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+                if (size() > maxEntradas) {
+                    desalojos.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static String clave(String modelo, String hash) {
+        return modelo + ":" + hash;
+    }
+
+    public Map<String, Double> get(String modelo, String hash) {
+        String clave = clave(modelo, hash);
+        long ahora = System.currentTimeMillis();
+        synchronized (this) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null) {
+                if (entrada.expira() > ahora) {
+                    aciertos.incrementAndGet();
+                    return entrada.resultado();
+                }
+                entradas.remove(clave);
+                expiradas.incrementAndGet();
+            }
+        }
+        if (persistente) {
+            Map<String, Double> resultado = getPersistente(clave, ahora);
+            if (resultado != null) {
+                aciertosPersistentes.incrementAndGet();
+                return resultado;
+            }
+        }
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    public void put(String modelo, String hash, Map<String, Double> resultado) {
+        String clave = clave(modelo, hash);
+        Calendar fecha = Calendar.getInstance();
+        putMemoria(clave, Map.copyOf(resultado), fecha.getTimeInMillis() + ttlSegundos * 1000);
+        if (persistente) {
+            try {
+                repositoryPrediccionCacheada.save(
+                    new PrediccionCacheada(clave, modelo, hash, mapper.writeValueAsString(resultado), fecha));
+            } catch (Exception e) {
+                // Un fallo al persistir la cache no debe invalidar la prediccion ya obtenida
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public synchronized void limpiar() {
+        entradas.clear();
+    }
+
+    public Map<String, Long> getEstadisticas() {
+        Map<String, Long> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("aciertosPersistentes", aciertosPersistentes.get());
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("desalojos", desalojos.get());
+        estadisticas.put("expiradas", expiradas.get());
+        synchronized (this) {
+            estadisticas.put("entradas", (long) entradas.size());
+        }
+        return estadisticas;
+    }
+
+    private synchronized void putMemoria(String clave, Map<String, Double> resultado, long expira) {
+        entradas.put(clave, new Entrada(resultado, expira));
+    }
+
+    private Map<String, Double> getPersistente(String clave, long ahora) {
+        try {
+            PrediccionCacheada guardada = repositoryPrediccionCacheada.findById(clave).orElse(null);
+            if (guardada == null) {
+                return null;
+            }
+            long expira = guardada.getFecha().getTimeInMillis() + ttlSegundos * 1000;
+            if (expira <= ahora) {
+                repositoryPrediccionCacheada.delete(guardada);
+                expiradas.incrementAndGet();
+                return null;
+            }
+            Map<String, Double> resultado = Map.copyOf(
+                mapper.readValue(guardada.getResultado(), new TypeReference<Map<String, Double>>() {}));
+            putMemoria(clave, resultado, expira);
+            return resultado;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+// Nivel persistente de la cache de predicciones: resultado del modelo por (modelo, hash de la imagen)
+@Entity
+@Table(name = "prediccion_cache")
+public class PrediccionCacheada {
+
+    @Id
+    @Column(name = "clave", length = 512)
+    private String clave;
+
+    @Column(name = "modelo")
+    private String modelo;
+
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // Respuesta del modelo serializada como JSON {etiqueta: score}
+    @Column(name = "resultado", length = 2048)
+    private String resultado;
+
+    @Column(name = "fecha")
+    private Calendar fecha;
+
+    public PrediccionCacheada() {
+        // Constructor vacío necesario para JPA
+    }
+
+    public PrediccionCacheada(String clave, String modelo, String hash, String resultado, Calendar fecha) {
+        this.clave = clave;
+        this.modelo = modelo;
+        this.hash = hash;
+        this.resultado = resultado;
+        this.fecha = fecha;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+
+    public void setModelo(String modelo) {
+        this.modelo = modelo;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getResultado() {
+        return resultado;
+    }
+
+    public void setResultado(String resultado) {
+        this.resultado = resultado;
+    }
+
+    public Calendar getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(Calendar fecha) {
+        this.fecha = fecha;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PrediccionCacheada)) return false;
+        return clave != null && clave.equals(((PrediccionCacheada) o).getClave());
+    }
+
+    @Override
+    public int hashCode() {
+        return clave != null ? clave.hashCode() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PrediccionCacheada{" +
+                "modelo='" + modelo + '\'' +
+                ", hash='" + hash + '\'' +
+                ", resultado='" + resultado + '\'' +
+                '}';
+    }
+}
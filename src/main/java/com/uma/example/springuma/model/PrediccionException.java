@@ -0,0 +1,46 @@
+package com.uma.example.springuma.model;
+
+// Fallo de una prediccion, con el tipo que decide el codigo HTTP con el que se responde:
+// NO_DISPONIBLE 503 (modelo cargando, circuito abierto o demasiadas llamadas en curso), TIMEOUT 504,
+// ERROR_REMOTO 502 (el servicio respondio un error o algo que no se entiende, o no se pudo conectar),
+// IMAGEN_NO_VALIDA 422 (el modelo no puede leer la imagen)
+public class PrediccionException extends Exception {
+
+    public enum Tipo { NO_DISPONIBLE, TIMEOUT, ERROR_REMOTO, IMAGEN_NO_VALIDA }
+
+    private final Tipo tipo;
+
+    // Si tiene sentido repetir la llamada (modelo cargando, 429, 503)
+    private final boolean reintentable;
+
+    // Espera que indica el servicio (estimated_time, Retry-After) o, con el circuito abierto, lo que falta
+    // para volver a probar; 0 si no se sabe
+    private final long esperaMs;
+
+    public PrediccionException(Tipo tipo, String mensaje) {
+        this(tipo, mensaje, false, 0, null);
+    }
+
+    public PrediccionException(Tipo tipo, String mensaje, Throwable causa) {
+        this(tipo, mensaje, false, 0, causa);
+    }
+
+    public PrediccionException(Tipo tipo, String mensaje, boolean reintentable, long esperaMs, Throwable causa) {
+        super(mensaje, causa);
+        this.tipo = tipo;
+        this.reintentable = reintentable;
+        this.esperaMs = esperaMs;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public boolean isReintentable() {
+        return reintentable;
+    }
+
+    public long getEsperaMs() {
+        return esperaMs;
+    }
+}
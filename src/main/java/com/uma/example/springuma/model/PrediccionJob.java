@@ -0,0 +1,95 @@
+package com.uma.example.springuma.model;
+
+import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Prediccion en segundo plano: se consulta por id mientras el modelo responde
+public class PrediccionJob {
+
+    public enum Estado { PENDIENTE, EN_CURSO, COMPLETADO, ERROR }
+
+    private final String id;
+    private final Long imagenId;
+    private final Calendar creado;
+
+    private volatile Estado estado = Estado.PENDIENTE;
+    private volatile String prediccion;
+    private volatile String error;
+    private volatile Calendar terminado;
+
+    @JsonIgnore
+    private final CompletableFuture<String> resultado = new CompletableFuture<>();
+
+    public PrediccionJob(String id, Long imagenId) {
+        this.id = id;
+        this.imagenId = imagenId;
+        this.creado = Calendar.getInstance();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getImagenId() {
+        return imagenId;
+    }
+
+    public Calendar getCreado() {
+        return creado;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public String getPrediccion() {
+        return prediccion;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Calendar getTerminado() {
+        return terminado;
+    }
+
+    @JsonIgnore
+    public boolean isTerminado() {
+        return resultado.isDone();
+    }
+
+    @JsonIgnore
+    public CompletableFuture<String> getResultado() {
+        return resultado;
+    }
+
+    void iniciar() {
+        estado = Estado.EN_CURSO;
+    }
+
+    void completar(String prediccion) {
+        this.prediccion = prediccion;
+        this.terminado = Calendar.getInstance();
+        this.estado = Estado.COMPLETADO;
+        resultado.complete(prediccion);
+    }
+
+    void fallar(Throwable causa) {
+        this.error = causa.getMessage();
+        this.terminado = Calendar.getInstance();
+        this.estado = Estado.ERROR;
+        resultado.completeExceptionally(causa);
+    }
+
+    @Override
+    public String toString() {
+        return "PrediccionJob{" +
+                "id='" + id + '\'' +
+                ", imagenId=" + imagenId +
+                ", estado=" + estado +
+                '}';
+    }
+}
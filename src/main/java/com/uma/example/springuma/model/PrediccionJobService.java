@@ -0,0 +1,117 @@
+package com.uma.example.springuma.model;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Ejecuta las llamadas al modelo fuera de los hilos de Tomcat, en un pool acotado con cola acotada
+@Service
+public class PrediccionJobService {
+
+    @Value("${prediccion.jobs.hilos:8}")
+    private int hilos;
+
+    @Value("${prediccion.jobs.cola:100}")
+    private int cola;
+
+    @Value("${prediccion.jobs.retencion-segundos:600}")
+    private long retencionSegundos;
+
+    @Value("${prediccion.jobs.espera-maxima-ms:25000}")
+    private long esperaMaximaMs;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, PrediccionJob> jobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(cola),
+            r -> {
+                Thread t = new Thread(r, "prediccion-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Lanza RejectedExecutionException si la cola esta llena
+    public PrediccionJob submit(Long imagenId, Callable<String> tarea) {
+        purgarTerminados();
+        PrediccionJob job = new PrediccionJob(UUID.randomUUID().toString(), imagenId);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> {
+                job.iniciar();
+                try {
+                    job.completar(tarea.call());
+                } catch (Throwable e) {
+                    job.fallar(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    // Ejecuta una tarea en el mismo pool acotado, sin registrarla como job consultable
+    public <T> CompletableFuture<T> ejecutar(Callable<T> tarea) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    resultado.complete(tarea.call());
+                } catch (Throwable e) {
+                    resultado.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resultado.completeExceptionally(e);
+        }
+        return resultado;
+    }
+
+    public PrediccionJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    // Long-poll sin bloquear el hilo de la peticion: se completa al terminar el job o al agotar la espera
+    public CompletableFuture<PrediccionJob> esperar(PrediccionJob job, long esperaMs) {
+        long espera = Math.min(Math.max(esperaMs, 0), esperaMaximaMs);
+        if (job.isTerminado() || espera == 0) {
+            return CompletableFuture.completedFuture(job);
+        }
+        return job.getResultado()
+            .handle((prediccion, error) -> job)
+            .completeOnTimeout(job, espera, TimeUnit.MILLISECONDS);
+    }
+
+    private void purgarTerminados() {
+        long limite = System.currentTimeMillis() - retencionSegundos * 1000;
+        jobs.values().removeIf(job -> job.isTerminado() && job.getTerminado() != null
+            && job.getTerminado().getTimeInMillis() < limite);
+    }
+}
@@ -0,0 +1,168 @@
+package com.uma.example.springuma.model;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.uma.example.springuma.utils.ImageUtils;
+
+@Service
+public class PrediccionService {
+
+    @Autowired
+    private Predictor predictor;
+
+    @Autowired
+    private PrediccionCache prediccionCache;
+
+    @Autowired
+    private ResilienciaPredictor resilienciaPredictor;
+
+    @Autowired
+    private AgrupadorPredicciones agrupadorPredicciones;
+
+    @Autowired
+    private RepositoryPrediccion repositoryPrediccion;
+
+    // Predicciones en curso por clave de cache (modelo y hash)
+    private final ConcurrentHashMap<String, CompletableFuture<Map<String, Double>>> enCurso = new ConcurrentHashMap<>();
+
+    private final AtomicLong compartidas = new AtomicLong();
+
+    // Respuesta del modelo para los bytes (sin comprimir) de una imagen, consultando antes la cache
+    public Map<String, Double> predecir(byte[] imagen) throws IOException, Exception {
+        return predecir(ImageUtils.hashImage(imagen), imagen);
+    }
+
+    // Variante para quien ya conoce el hash de la imagen y no necesita recalcularlo
+    public Map<String, Double> predecir(String hash, byte[] imagen) throws IOException, Exception {
+        return predecir(hash, () -> imagen);
+    }
+
+    // Con el hash guardado en Imagen, un acierto de cache no llega a leer el contenido de la imagen.
+    // Los fallos del modelo llegan como PrediccionException (ver ResilienciaPredictor); las llamadas
+    // simultaneas pueden ir al modelo en un mismo lote (ver AgrupadorPredicciones).
+    // Single-flight: si ya hay una prediccion en curso para el mismo modelo y hash, se espera a esa en vez
+    // de llamar otra vez al modelo, y todas reciben el mismo resultado o el mismo error
+    public Map<String, Double> predecir(String hash, Callable<byte[]> cargarImagen) throws IOException, Exception {
+        return calcular(hash, cargarImagen).puntuaciones();
+    }
+
+    // Lo mismo, con los datos para guardar la prediccion (ver Prediccion); la imagen la pone quien la guarda
+    public Prediccion predecirDetalle(String hash, Callable<byte[]> cargarImagen) throws IOException, Exception {
+        long inicio = System.nanoTime();
+        Calculada calculada = calcular(hash, cargarImagen);
+        long latenciaMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        return new Prediccion(calculada.puntuaciones(), calculada.modelo(), latenciaMs, !calculada.llamada(), hash);
+    }
+
+    // llamada: si esta prediccion ha llamado ella misma al modelo
+    private record Calculada(Map<String, Double> puntuaciones, String modelo, boolean llamada) {
+    }
+
+    private Calculada calcular(String hash, Callable<byte[]> cargarImagen) throws IOException, Exception {
+        String modelo = predictor.getModelo();
+        Map<String, Double> resultado = prediccionCache.get(modelo, hash);
+        if (resultado != null) {
+            return new Calculada(resultado, modelo, false);
+        }
+        String clave = PrediccionCache.clave(modelo, hash);
+        CompletableFuture<Map<String, Double>> nueva = new CompletableFuture<>();
+        CompletableFuture<Map<String, Double>> existente = enCurso.putIfAbsent(clave, nueva);
+        if (existente != null) {
+            compartidas.incrementAndGet();
+            return new Calculada(esperar(existente), modelo, false);
+        }
+        try {
+            // otra prediccion igual ha podido terminar (y dejarla en la cache) entre la consulta de arriba y putIfAbsent
+            resultado = prediccionCache.get(modelo, hash);
+            if (resultado != null) {
+                nueva.complete(resultado);
+                return new Calculada(resultado, modelo, false);
+            }
+            byte[] imagen = cargarImagen.call();
+            resultado = agrupadorPredicciones.predecir(imagen);
+            // a la cache antes de salir de enCurso: quien llegue despues ya la encuentra
+            prediccionCache.put(modelo, hash, resultado);
+            nueva.complete(resultado);
+            return new Calculada(resultado, modelo, true);
+        } catch (Exception e) {
+            nueva.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, nueva);
+        }
+    }
+
+    private static Map<String, Double> esperar(CompletableFuture<Map<String, Double>> enCurso) throws Exception {
+        try {
+            return enCurso.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "Prediccion interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    public String getNewPrediccion(byte[] imagen) throws IOException, Exception {
+        return formatear(predecir(imagen));
+    }
+
+    public static String formatear(Map<String, Double> response) {
+        double score_0 = response.get("LABEL_0");
+        double score_1 = response.get("LABEL_1");
+        String resulString;
+        if (score_0 > score_1){
+            resulString = "Not cancer (label 0),  score: " + score_0;
+        }else{
+            resulString = "Cancer (label 1), score: " + score_1;
+        }
+        return resulString;
+    }
+
+    // Junto a las de la cache, cuantas predicciones se han ahorrado esperando a otra igual en curso
+    public Map<String, Long> getEstadisticasCache() {
+        Map<String, Long> estadisticas = new LinkedHashMap<>(prediccionCache.getEstadisticas());
+        estadisticas.put("compartidas", compartidas.get());
+        estadisticas.put("enCurso", (long) enCurso.size());
+        return estadisticas;
+    }
+
+    public Map<String, Object> getEstadisticasResiliencia() {
+        return resilienciaPredictor.getEstadisticas();
+    }
+
+    public Prediccion guardar(Prediccion prediccion) {
+        return repositoryPrediccion.save(prediccion);
+    }
+
+    public Prediccion getPrediccion(Long id) {
+        return repositoryPrediccion.findById(id).orElse(null);
+    }
+
+    public List<Prediccion> getPrediccionesImagen(Long id) {
+        return repositoryPrediccion.findByImagen_IdOrderByFechaDesc(id);
+    }
+
+    public List<RepositoryPrediccion.ResumenPrediccion> getResumen() {
+        return repositoryPrediccion.resumenPorEtiqueta();
+    }
+
+    public Map<String, Object> getEstadisticasAgrupacion() {
+        return agrupadorPredicciones.getEstadisticas();
+    }
+}
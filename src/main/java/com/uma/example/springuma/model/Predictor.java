@@ -0,0 +1,30 @@
+package com.uma.example.springuma.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Backend que ejecuta el modelo de prediccion. Se elige con predictor.tipo: remoto (API HTTP, por defecto)
+// o local (el modelo exportado se ejecuta dentro de la JVM)
+public interface Predictor {
+
+    // Puntuacion de cada etiqueta (LABEL_0 sin cancer, LABEL_1 cancer) para los bytes de la imagen
+    Map<String, Double> predecir(byte[] imagen) throws PrediccionException;
+
+    // Identificador del modelo, forma parte de la clave de la cache de predicciones
+    String getModelo();
+
+    // Si predecirLote hace una unica inferencia para todas las imagenes; si no, no compensa agruparlas
+    default boolean admiteLotes() {
+        return false;
+    }
+
+    // Resultados en el mismo orden que las imagenes. Si falla una imagen falla el lote entero
+    default List<Map<String, Double>> predecirLote(List<byte[]> imagenes) throws PrediccionException {
+        List<Map<String, Double>> resultados = new ArrayList<>(imagenes.size());
+        for (byte[] imagen : imagenes) {
+            resultados.add(predecir(imagen));
+        }
+        return resultados;
+    }
+}
@@ -0,0 +1,240 @@
+package com.uma.example.springuma.model;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+// Ejecuta el modelo dentro de la JVM, sin llamadas de red. El modelo exportado (predictor.local.modelo) es un
+// JSON con un clasificador lineal sobre la imagen en grises reducida a ancho x alto:
+//   {"modelo": "...", "ancho": 32, "alto": 32, "etiquetas": ["LABEL_0", "LABEL_1"],
+//    "pesos": [[...ancho*alto...], ...], "sesgos": [...], "media": 0.0, "desviacion": 1.0}
+// Cada pixel se normaliza a ((gris / 255) - media) / desviacion y las puntuaciones son el softmax de
+// pesos * pixeles + sesgos. Las sesiones (buffers ya reservados para una inferencia) van en un pool: cada
+// prediccion toma una, y si no hay ninguna libre en predictor.local.espera-ms falla con NO_DISPONIBLE.
+// Al arrancar cada sesion hace unas inferencias de calentamiento para que la primera peticion no pague
+// la carga de clases y la compilacion
+@Component
+@ConditionalOnProperty(name = "predictor.tipo", havingValue = "local")
+public class PredictorLocal implements Predictor {
+
+    @Value("${predictor.local.modelo}")
+    private Resource recurso;
+
+    @Value("${predictor.local.sesiones:0}")
+    private int numeroSesiones;
+
+    @Value("${predictor.local.espera-ms:1000}")
+    private long esperaMs;
+
+    @Value("${predictor.local.calentamiento:20}")
+    private int calentamiento;
+
+    private ModeloExportado modelo;
+
+    private BlockingQueue<Sesion> sesiones;
+
+    record ModeloExportado(String modelo, int ancho, int alto, List<String> etiquetas, float[][] pesos,
+                           float[] sesgos, Float media, Float desviacion) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        try (InputStream in = recurso.getInputStream()) {
+            modelo = new ObjectMapper().readValue(in, ModeloExportado.class);
+        }
+        validar(modelo);
+
+        int n = numeroSesiones > 0 ? numeroSesiones : Runtime.getRuntime().availableProcessors();
+        sesiones = new ArrayBlockingQueue<>(n);
+        byte[] sintetica = imagenSintetica();
+        for (int i = 0; i < n; i++) {
+            Sesion sesion = new Sesion();
+            for (int j = 0; j < calentamiento; j++) {
+                try {
+                    sesion.inferir(List.of(sintetica));
+                } catch (PrediccionException e) {
+                    throw new IllegalStateException("No se pudo calentar el modelo " + modelo.modelo(), e);
+                }
+            }
+            sesiones.add(sesion);
+        }
+    }
+
+    private static void validar(ModeloExportado modelo) {
+        int entradas = modelo.ancho() * modelo.alto();
+        int salidas = modelo.etiquetas() == null ? 0 : modelo.etiquetas().size();
+        if (entradas <= 0 || salidas == 0 || modelo.pesos() == null || modelo.pesos().length != salidas
+                || modelo.sesgos() == null || modelo.sesgos().length != salidas) {
+            throw new IllegalStateException("Modelo exportado no valido: " + modelo.modelo());
+        }
+        // Prediccion solo sabe leer estas dos etiquetas; con otras cada prediccion fallaria con un NPE
+        if (salidas != 2 || !modelo.etiquetas().containsAll(List.of(Prediccion.SIN_CANCER, Prediccion.CANCER))) {
+            throw new IllegalStateException("Modelo exportado no valido: las etiquetas deben ser " + Prediccion.SIN_CANCER
+                + " y " + Prediccion.CANCER + ", no " + modelo.etiquetas());
+        }
+        for (float[] fila : modelo.pesos()) {
+            if (fila.length != entradas) {
+                throw new IllegalStateException("Modelo exportado no valido: se esperaban " + entradas + " pesos por etiqueta");
+            }
+        }
+    }
+
+    @Override
+    public String getModelo() {
+        return "local:" + modelo.modelo();
+    }
+
+    @Override
+    public Map<String, Double> predecir(byte[] imagen) throws PrediccionException {
+        return predecirLote(List.of(imagen)).get(0);
+    }
+
+    @Override
+    public boolean admiteLotes() {
+        return true;
+    }
+
+    // Todo el lote con una misma sesion, recorriendo los pesos una sola vez para todas las imagenes
+    @Override
+    public List<Map<String, Double>> predecirLote(List<byte[]> imagenes) throws PrediccionException {
+        Sesion sesion;
+        try {
+            sesion = sesiones.poll(esperaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "Prediccion interrumpida");
+        }
+        if (sesion == null) {
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "No hay sesiones del modelo libres");
+        }
+        try {
+            return sesion.inferir(imagenes);
+        } finally {
+            sesiones.add(sesion);
+        }
+    }
+
+    // Buffers de una inferencia; solo la usa el hilo que la ha sacado del pool. Las entradas crecen con el
+    // lote mas grande que haya visto la sesion
+    private class Sesion {
+
+        private final BufferedImage reducida = new BufferedImage(modelo.ancho(), modelo.alto(), BufferedImage.TYPE_BYTE_GRAY);
+        private final int[] grises = new int[modelo.ancho() * modelo.alto()];
+        private float[][] entradas = new float[1][grises.length];
+        private double[][] logits = new double[1][modelo.etiquetas().size()];
+
+        List<Map<String, Double>> inferir(List<byte[]> imagenes) throws PrediccionException {
+            int n = imagenes.size();
+            if (entradas.length < n) {
+                entradas = new float[n][grises.length];
+                logits = new double[n][modelo.etiquetas().size()];
+            }
+            for (int b = 0; b < n; b++) {
+                preparar(imagenes.get(b), entradas[b]);
+            }
+
+            int etiquetas = modelo.etiquetas().size();
+            for (int k = 0; k < etiquetas; k++) {
+                float[] pesos = modelo.pesos()[k];
+                for (int b = 0; b < n; b++) {
+                    float[] entrada = entradas[b];
+                    double suma = modelo.sesgos()[k];
+                    for (int i = 0; i < entrada.length; i++) {
+                        suma += pesos[i] * entrada[i];
+                    }
+                    logits[b][k] = suma;
+                }
+            }
+
+            List<Map<String, Double>> resultados = new ArrayList<>(n);
+            for (int b = 0; b < n; b++) {
+                resultados.add(softmax(logits[b], etiquetas));
+            }
+            return resultados;
+        }
+
+        private void preparar(byte[] imagen, float[] entrada) throws PrediccionException {
+            BufferedImage original;
+            try {
+                original = ImageIO.read(new ByteArrayInputStream(imagen));
+            } catch (IOException e) {
+                original = null;
+            }
+            if (original == null) {
+                throw new PrediccionException(PrediccionException.Tipo.IMAGEN_NO_VALIDA, "El modelo no puede leer la imagen");
+            }
+
+            // reducida se reutiliza: con Src (no SrcOver) lo transparente no deja ver la imagen anterior
+            Graphics2D g = reducida.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(original, 0, 0, modelo.ancho(), modelo.alto(), null);
+            } finally {
+                g.dispose();
+            }
+            reducida.getRaster().getPixels(0, 0, modelo.ancho(), modelo.alto(), grises);
+
+            float media = modelo.media() == null ? 0f : modelo.media();
+            float desviacion = modelo.desviacion() == null ? 1f : modelo.desviacion();
+            for (int i = 0; i < grises.length; i++) {
+                entrada[i] = (grises[i] / 255f - media) / desviacion;
+            }
+        }
+
+        private Map<String, Double> softmax(double[] logits, int etiquetas) {
+            double maximo = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < etiquetas; k++) {
+                maximo = Math.max(maximo, logits[k]);
+            }
+            double total = 0;
+            for (int k = 0; k < etiquetas; k++) {
+                logits[k] = Math.exp(logits[k] - maximo);
+                total += logits[k];
+            }
+            Map<String, Double> puntuaciones = new LinkedHashMap<>();
+            for (int k = 0; k < etiquetas; k++) {
+                puntuaciones.put(modelo.etiquetas().get(k), logits[k] / total);
+            }
+            return puntuaciones;
+        }
+    }
+
+    // PNG con un degradado, para recorrer en el calentamiento el mismo camino que una imagen real
+    private byte[] imagenSintetica() throws IOException {
+        int lado = Math.max(64, Math.max(modelo.ancho(), modelo.alto()) * 2);
+        BufferedImage imagen = new BufferedImage(lado, lado, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < lado; y++) {
+            for (int x = 0; x < lado; x++) {
+                int gris = (x + y) * 255 / (2 * lado);
+                imagen.setRGB(x, y, (gris << 16) | (gris << 8) | gris);
+            }
+        }
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ImageIO.write(imagen, "png", salida);
+        return salida.toByteArray();
+    }
+}
@@ -0,0 +1,37 @@
+package com.uma.example.springuma.model;
+
+import jakarta.persistence.*;
+
+// Cuantas imagenes comparten el contenido con este hash; el contenido se guarda una sola vez en el ImageStore
+// y se borra cuando el contador llega a cero (ver ReferenciasBlob)
+@Entity
+@Table(name = "blob_referencias")
+public class ReferenciaBlob {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "referencias", nullable = false)
+    private long referencias;
+
+    public ReferenciaBlob() {
+        // Constructor vacío necesario para JPA
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public long getReferencias() {
+        return referencias;
+    }
+
+    public void setReferencias(long referencias) {
+        this.referencias = referencias;
+    }
+}
@@ -0,0 +1,117 @@
+package com.uma.example.springuma.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Contador de imagenes por contenido (tabla blob_referencias). Las operaciones bloquean la fila del hash
+// hasta el final de la transaccion de quien llama, asi que una subida que incrementa antes de confirmar
+// el contenido en el almacen nunca se cruza con un borrado que lo elimina al llegar a cero.
+// Con el contenido se borran tambien sus miniaturas
+@Component
+public class ReferenciasBlob {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private MiniaturaService miniaturaService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${imagen.gc.gracia-ms:3600000}")
+    private long graciaMs;
+
+    // Debe llamarse dentro de la transaccion que guarda la Imagen
+    public void incrementar(String hash) {
+        jdbcTemplate.update("merge into blob_referencias r using (values (cast(? as varchar(64)))) v(hash) on r.hash = v.hash"
+            + " when matched then update set referencias = r.referencias + 1"
+            + " when not matched then insert (hash, referencias) values (v.hash, 1)", hash);
+    }
+
+    // Debe llamarse dentro de la transaccion que borra la Imagen; si era la ultima, borra tambien el contenido
+    public void decrementar(String hash, String referencia) throws IOException {
+        int actualizadas = jdbcTemplate.update("update blob_referencias set referencias = referencias - 1 where hash = ?", hash);
+        Long restantes = actualizadas == 0 ? Long.valueOf(0)
+            : jdbcTemplate.queryForObject("select referencias from blob_referencias where hash = ?", Long.class, hash);
+        if (restantes != null && restantes <= 0) {
+            jdbcTemplate.update("delete from blob_referencias where hash = ?", hash);
+            imageStore.borrar(referencia);
+            miniaturaService.borrar(hash);
+        }
+    }
+
+    // Contenido que ya no usa ninguna imagen aunque su contador no llegara a cero: imagenes borradas en
+    // cascada con su paciente, o contadores que quedaron altos. Tambien el contenido del almacen que no esta
+    // en ninguna de las dos tablas (p.ej. escrito por un proceso que murio antes de terminar la transaccion),
+    // si tiene mas de imagen.gc.gracia-ms. Cada hash se borra en su propia transaccion
+    @Scheduled(initialDelayString = "${imagen.gc.intervalo-ms:3600000}", fixedDelayString = "${imagen.gc.intervalo-ms:3600000}")
+    public int recolectar() throws IOException {
+        Set<String> candidatos = new LinkedHashSet<>(jdbcTemplate.queryForList("select r.hash from blob_referencias r"
+            + " where not exists (select 1 from imagen i where i.hash = r.hash)", String.class));
+        candidatos.addAll(sinReferencias(imageStore.listar(System.currentTimeMillis() - graciaMs)));
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        int borrados = 0;
+        for (String hash : candidatos) {
+            Boolean borrado = transaccion.execute(estado -> {
+                // bloquea el hash como incrementar: una subida del mismo contenido espera a que termine
+                jdbcTemplate.update("merge into blob_referencias r using (values (cast(? as varchar(64)))) v(hash) on r.hash = v.hash"
+                    + " when matched then update set referencias = r.referencias"
+                    + " when not matched then insert (hash, referencias) values (v.hash, 0)", hash);
+                Integer usos = jdbcTemplate.queryForObject("select count(*) from imagen where hash = ?", Integer.class, hash);
+                if (usos == null || usos > 0) {
+                    estado.setRollbackOnly();
+                    return false;
+                }
+                jdbcTemplate.update("delete from blob_referencias where hash = ?", hash);
+                try {
+                    imageStore.borrar(imageStore.getReferencia(hash));
+                    miniaturaService.borrar(hash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+            if (Boolean.TRUE.equals(borrado)) {
+                borrados++;
+            }
+        }
+        return borrados;
+    }
+
+    // Claves del almacen que no son de ninguna imagen ni contador, ni miniaturas de uno de ellos
+    private Set<String> sinReferencias(List<String> claves) {
+        Set<String> sinUso = new LinkedHashSet<>(claves);
+        if (sinUso.isEmpty()) {
+            return sinUso;
+        }
+        List<String> usados = jdbcTemplate.queryForList("select hash from imagen where hash is not null"
+            + " union select hash from blob_referencias", String.class);
+        for (String hash : usados) {
+            sinUso.remove(hash);
+            sinUso.removeAll(miniaturaService.getClaves(hash));
+        }
+        return sinUso;
+    }
+
+    // Crea los contadores que falten a partir de las imagenes existentes (contenido guardado antes de contarlo)
+    public int reconstruir() {
+        return jdbcTemplate.update("insert into blob_referencias (hash, referencias)"
+            + " select i.hash, count(*) from imagen i where i.hash is not null"
+            + " and not exists (select 1 from blob_referencias r where r.hash = i.hash) group by i.hash");
+    }
+}
@@ -1,14 +1,38 @@
 package com.uma.example.springuma.model;
 
 
+import java.util.Calendar;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface RepositoryImagen extends JpaRepository<Imagen, Long> {
 
+    // Con @Query para filtrar por la columna paciente_id (idx_imagen_paciente) y no por un join con paciente
+    @Query("select i from Imagen i where i.paciente.id = ?1 order by i.id")
     List<Imagen> getByPacienteId(Long id);
 
+    @Query("select i.id from Imagen i where i.paciente.id = ?1 order by i.id")
+    List<Long> findIdsByPacienteId(Long id);
+
+    // Paginas de los listados (ver Pagina), por id o por fecha y despues id
+    @Query("select new com.uma.example.springuma.model.ImagenInfo(i.id, i.nombre, i.fecha, i.paciente.id, i.tamano, i.hash)"
+        + " from Imagen i where i.paciente.id = ?1 and i.id > ?2 order by i.id")
+    Slice<ImagenInfo> findInfoByPacienteId(Long id, long despues, Pageable pagina);
+
+    @Query("select new com.uma.example.springuma.model.ImagenInfo(i.id, i.nombre, i.fecha, i.paciente.id, i.tamano, i.hash)"
+        + " from Imagen i where i.paciente.id = ?1 order by i.fecha, i.id")
+    Slice<ImagenInfo> findInfoByPacienteIdPorFecha(Long id, Pageable pagina);
+
+    @Query("select new com.uma.example.springuma.model.ImagenInfo(i.id, i.nombre, i.fecha, i.paciente.id, i.tamano, i.hash)"
+        + " from Imagen i where i.paciente.id = ?1 and (i.fecha > ?2 or (i.fecha = ?2 and i.id > ?3)) order by i.fecha, i.id")
+    Slice<ImagenInfo> findInfoByPacienteIdPorFecha(Long id, Calendar fecha, long despues, Pageable pagina);
+
+    Slice<Imagen> findByIdGreaterThanOrderByIdAsc(long despues, Pageable pagina);
+
 
     // Aquí puedes añadir métodos personalizados si es necesario.
     // Por ejemplo, si quieres buscar imágenes por una propiedad específica:
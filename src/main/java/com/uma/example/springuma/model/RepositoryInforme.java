@@ -1,12 +1,36 @@
 package com.uma.example.springuma.model;
 
-import java.util.List;
-
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface RepositoryInforme extends JpaRepository<Informe, Long>{
 
-    List<Informe> findByImagenId(Long id);
+    // Paginas por id (ver Pagina). Con @Query para filtrar por la columna imagen_id (idx_informe_imagen) y no
+    // por un join con imagen
+    @Query("select i from Informe i where i.imagen.id = ?1 order by i.id")
+    Slice<Informe> findByImagenIdOrderByIdAsc(Long id, Pageable pagina);
+
+    @Query("select i from Informe i where i.imagen.id = ?1 and i.id > ?2 order by i.id")
+    Slice<Informe> findByImagenIdAndIdGreaterThanOrderByIdAsc(Long id, long despues, Pageable pagina);
+
+    Slice<Informe> findByIdGreaterThanOrderByIdAsc(long despues, Pageable pagina);
+
+    // Solo toca las columnas de la prediccion, para no pisar cambios de contenido hechos mientras el job corria.
+    // Sin resultado (pendiente o error) se borra el de una prediccion anterior
+    @Transactional
+    @Modifying
+    @Query("update Informe i set i.prediccion = :prediccion, i.resultado = null where i.id = :id")
+    int updatePrediccion(@Param("id") long id, @Param("prediccion") String prediccion);
+
+    @Transactional
+    @Modifying
+    @Query("update Informe i set i.prediccion = :prediccion, i.resultado = :resultado where i.id = :id")
+    int updateResultado(@Param("id") long id, @Param("prediccion") String prediccion, @Param("resultado") Prediccion resultado);
 
     // https://docs.spring.io/spring-data/jpa/docs/current/reference/html/#repositories.query-methods.query-creation
 	// Además de los metodos de consulta basicos, especifico un metodo que busque una cuenta por el CCC
@@ -1,13 +1,23 @@
 package com.uma.example.springuma.model;
 
-import java.util.List;
-
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface RepositoryPaciente extends JpaRepository<Paciente, Long> {
 
     Paciente findByDni(String dni);
 
-    List<Paciente> findByMedicoId(Long id);
+    // Paginas por id (ver Pagina): Slice pide una fila de mas para saber si hay siguiente, sin contar el total.
+    // Con @Query y no derivadas: derivadas hacen join con medico y filtran por su id, y entonces no se usa
+    // idx_paciente_medico sino un recorrido de toda la tabla
+    @Query("select p from Paciente p where p.medico.id = ?1 order by p.id")
+    Slice<Paciente> findByMedicoIdOrderByIdAsc(Long id, Pageable pagina);
+
+    @Query("select p from Paciente p where p.medico.id = ?1 and p.id > ?2 order by p.id")
+    Slice<Paciente> findByMedicoIdAndIdGreaterThanOrderByIdAsc(Long id, long despues, Pageable pagina);
+
+    Slice<Paciente> findByIdGreaterThanOrderByIdAsc(long despues, Pageable pagina);
 
 }
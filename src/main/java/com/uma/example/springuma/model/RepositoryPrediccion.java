@@ -0,0 +1,23 @@
+package com.uma.example.springuma.model;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface RepositoryPrediccion extends JpaRepository<Prediccion, Long> {
+
+    // Imagen_Id y no ImagenId: getImagenId() haria que se buscara una propiedad imagenId
+    List<Prediccion> findByImagen_IdOrderByFechaDesc(Long id);
+
+    // Cuantas predicciones hay de cada etiqueta y su puntuacion media de cancer, sobre las columnas numericas
+    @Query("select p.etiqueta as etiqueta, count(p) as total, avg(p.puntuacionCancer) as puntuacionCancerMedia "
+        + "from Prediccion p group by p.etiqueta order by p.etiqueta")
+    List<ResumenPrediccion> resumenPorEtiqueta();
+
+    interface ResumenPrediccion {
+        String getEtiqueta();
+        long getTotal();
+        double getPuntuacionCancerMedia();
+    }
+}
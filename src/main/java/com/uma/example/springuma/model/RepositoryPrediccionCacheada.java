@@ -0,0 +1,7 @@
+package com.uma.example.springuma.model;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RepositoryPrediccionCacheada extends JpaRepository<PrediccionCacheada, String> {
+
+}
@@ -0,0 +1,200 @@
+package com.uma.example.springuma.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// Protege las llamadas al modelo para que un servicio lento o caido no arrastre al resto de la aplicacion:
+//  - bulkhead: como mucho predictor.bulkhead.max-concurrentes llamadas a la vez; el resto espera
+//    predictor.bulkhead.espera-ms y si no hay hueco falla con NO_DISPONIBLE
+//  - circuito: tras predictor.circuito.fallos fallos seguidos se deja de llamar durante
+//    predictor.circuito.abierto-ms (falla al momento); despues pasa una unica llamada de prueba
+//  - reintentos: solo de los errores reintentables (modelo cargando, 429, 503), con espera exponencial
+//    con jitter, o la que indica el servicio si la da
+// El tiempo maximo de cada llamada lo impone el backend remoto (predictor.timeout-ms). Una imagen que el
+// modelo no puede leer no es un fallo del modelo: no cuenta para el circuito
+@Component
+public class ResilienciaPredictor {
+
+    public enum EstadoCircuito { CERRADO, ABIERTO, SEMIABIERTO }
+
+    @Value("${predictor.bulkhead.max-concurrentes:10}")
+    private int maxConcurrentes;
+
+    @Value("${predictor.bulkhead.espera-ms:1000}")
+    private long esperaBulkheadMs;
+
+    @Value("${predictor.circuito.fallos:5}")
+    private int fallosParaAbrir;
+
+    @Value("${predictor.circuito.abierto-ms:30000}")
+    private long abiertoMs;
+
+    @Value("${predictor.reintentos.maximo:3}")
+    private int maxReintentos;
+
+    @Value("${predictor.reintentos.base-ms:500}")
+    private long baseReintentoMs;
+
+    @Value("${predictor.reintentos.maximo-ms:10000}")
+    private long maximoReintentoMs;
+
+    private Semaphore bulkhead;
+
+    private EstadoCircuito estado = EstadoCircuito.CERRADO;
+    private int fallosSeguidos;
+    private long abiertoHasta;
+    private boolean pruebaEnCurso;
+
+    private final AtomicLong llamadas = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong rechazadasCircuito = new AtomicLong();
+    private final AtomicLong rechazadasBulkhead = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        bulkhead = new Semaphore(maxConcurrentes, true);
+    }
+
+    public <T> T ejecutar(Callable<T> llamada) throws PrediccionException {
+        for (int intento = 0; ; intento++) {
+            try {
+                return intentar(llamada);
+            } catch (PrediccionException e) {
+                if (!e.isReintentable() || intento >= maxReintentos) {
+                    throw e;
+                }
+                reintentos.incrementAndGet();
+                esperar(getEspera(intento, e.getEsperaMs()));
+            }
+        }
+    }
+
+    private <T> T intentar(Callable<T> llamada) throws PrediccionException {
+        boolean prueba = permitir();
+        boolean dentro;
+        try {
+            dentro = bulkhead.tryAcquire(esperaBulkheadMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dentro = false;
+        }
+        if (!dentro) {
+            rechazadasBulkhead.incrementAndGet();
+            if (prueba) {
+                liberarPrueba();
+            }
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "Demasiadas predicciones en curso");
+        }
+        llamadas.incrementAndGet();
+        try {
+            T resultado = llamada.call();
+            registrarExito();
+            return resultado;
+        } catch (PrediccionException e) {
+            if (e.getTipo() == PrediccionException.Tipo.IMAGEN_NO_VALIDA) {
+                registrarExito();
+            } else {
+                registrarFallo();
+            }
+            throw e;
+        } catch (Exception e) {
+            registrarFallo();
+            throw new PrediccionException(PrediccionException.Tipo.ERROR_REMOTO, "Error al realizar la prediccion: " + e.getMessage(), e);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    // Con el circuito abierto se falla sin llamar; pasado abiertoMs deja pasar una sola llamada de prueba.
+    // Devuelve true si esta llamada es esa prueba
+    private synchronized boolean permitir() throws PrediccionException {
+        long ahora = System.currentTimeMillis();
+        if (estado == EstadoCircuito.ABIERTO) {
+            if (ahora < abiertoHasta) {
+                rechazadasCircuito.incrementAndGet();
+                throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE,
+                    "Servicio de prediccion no disponible, se volvera a probar en " + (abiertoHasta - ahora) + " ms",
+                    false, abiertoHasta - ahora, null);
+            }
+            estado = EstadoCircuito.SEMIABIERTO;
+        }
+        if (estado == EstadoCircuito.SEMIABIERTO) {
+            if (pruebaEnCurso) {
+                rechazadasCircuito.incrementAndGet();
+                throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE,
+                    "Servicio de prediccion no disponible, comprobando si se ha recuperado", false, 0, null);
+            }
+            pruebaEnCurso = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void liberarPrueba() {
+        pruebaEnCurso = false;
+    }
+
+    private synchronized void registrarExito() {
+        fallosSeguidos = 0;
+        pruebaEnCurso = false;
+        estado = EstadoCircuito.CERRADO;
+    }
+
+    private synchronized void registrarFallo() {
+        fallos.incrementAndGet();
+        fallosSeguidos++;
+        pruebaEnCurso = false;
+        if (estado == EstadoCircuito.SEMIABIERTO || fallosSeguidos >= fallosParaAbrir) {
+            estado = EstadoCircuito.ABIERTO;
+            abiertoHasta = System.currentTimeMillis() + abiertoMs;
+        }
+    }
+
+    // Exponencial con jitter completo (entre 0 y el tope) para que las llamadas que fallaron a la vez no
+    // vuelvan a la vez; si el servicio indica cuanto esperar, entre la mitad y esa espera
+    private long getEspera(int intento, long sugeridaMs) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        if (sugeridaMs > 0) {
+            long tope = Math.min(sugeridaMs, maximoReintentoMs);
+            return tope / 2 + aleatorio.nextLong(tope / 2 + 1);
+        }
+        long tope = Math.min(maximoReintentoMs, baseReintentoMs << Math.min(intento, 20));
+        return aleatorio.nextLong(tope + 1);
+    }
+
+    private static void esperar(long ms) throws PrediccionException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "Prediccion interrumpida");
+        }
+    }
+
+    public synchronized EstadoCircuito getEstado() {
+        return estado == EstadoCircuito.ABIERTO && System.currentTimeMillis() >= abiertoHasta ? EstadoCircuito.SEMIABIERTO : estado;
+    }
+
+    public Map<String, Object> getEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("circuito", getEstado());
+        estadisticas.put("llamadas", llamadas.get());
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("reintentos", reintentos.get());
+        estadisticas.put("rechazadasCircuito", rechazadasCircuito.get());
+        estadisticas.put("rechazadasBulkhead", rechazadasBulkhead.get());
+        estadisticas.put("enCurso", (long) (maxConcurrentes - bulkhead.availablePermits()));
+        return estadisticas;
+    }
+}
@@ -0,0 +1,13 @@
+package com.uma.example.springuma.model;
+
+// Resultado de la prediccion de una imagen dentro de un lote; error es null si fue bien
+public record ResultadoPrediccion(Long imagenId, String prediction, String error) {
+
+    public static ResultadoPrediccion ok(Long imagenId, String prediction) {
+        return new ResultadoPrediccion(imagenId, prediction, null);
+    }
+
+    public static ResultadoPrediccion error(Long imagenId, String error) {
+        return new ResultadoPrediccion(imagenId, null, error);
+    }
+}
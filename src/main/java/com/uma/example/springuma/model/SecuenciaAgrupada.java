@@ -0,0 +1,28 @@
+package com.uma.example.springuma.model;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+// Ids de una secuencia reservados de secuencias.asignacion en secuencias.asignacion: una sola llamada a la
+// secuencia por bloque, y el optimizador pooled los reparte en memoria. Es el generador de siempre con el
+// tamano del bloque configurable (en @SequenceGenerator es una constante). La secuencia de la base de datos
+// tiene que incrementar lo mismo: lo ajusta la migracion R__secuencias con el mismo valor
+public class SecuenciaAgrupada extends SequenceStyleGenerator {
+
+    public static final String ASIGNACION = "secuencias.asignacion";
+
+    @Override
+    public void configure(Type type, Properties parametros, ServiceRegistry serviceRegistry) throws MappingException {
+        Object asignacion = serviceRegistry.getService(ConfigurationService.class).getSettings().get(ASIGNACION);
+        // Hibernate ya trae increment_size con su valor por defecto (50): manda el configurado
+        if (asignacion != null) {
+            parametros.setProperty(INCREMENT_PARAM, asignacion.toString());
+        }
+        super.configure(type, parametros, serviceRegistry);
+    }
+}
@@ -0,0 +1,40 @@
+package com.uma.example.springuma.utils;
+
+// Formato del contenido guardado, identificado por su primer byte.
+// Los flujos zlib empiezan siempre por 0x78, asi que el contenido deflate (y el anterior a este formato)
+// se guarda sin byte extra y sigue siendo un zlib valido para servirlo tal cual como "deflate" en HTTP.
+// BLOQUES no es un codec en si: es el contenido partido en bloques comprimidos por separado (ver FormatoBloques)
+public enum CodecImagen {
+    NINGUNO(0x00),
+    ZSTD(0x01),
+    BLOQUES(0x02),
+    DEFLATE(0x78);
+
+    private final int cabecera;
+
+    CodecImagen(int cabecera) {
+        this.cabecera = cabecera;
+    }
+
+    public int getCabecera() {
+        return cabecera;
+    }
+
+    public static CodecImagen deCabecera(int cabecera) {
+        for (CodecImagen codec : values()) {
+            if (codec.cabecera == cabecera) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Formato de imagen desconocido: " + cabecera);
+    }
+
+    // ninguno, deflate o zstd (sin distinguir mayusculas)
+    public static CodecImagen deNombre(String nombre) {
+        CodecImagen codec = valueOf(nombre.trim().toUpperCase());
+        if (codec == BLOQUES) {
+            throw new IllegalArgumentException("Codec no valido: " + nombre);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,191 @@
+package com.uma.example.springuma.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+// Deflate en paralelo al estilo de pigz: el contenido se parte en bloques de BLOQUE bytes que se comprimen
+// a la vez en PoolCompresion, cada uno con los ultimos 32KB del anterior como diccionario (la compresion
+// casi no empeora). Los bloques terminan con un SYNC_FLUSH, que los alinea a byte, y el ultimo con FINISH:
+// concatenados forman un unico flujo deflate. Con la cabecera de zlib delante y el adler32 del contenido
+// (calculado segun se escribe) el resultado es un zlib normal, que decompressImage lee como cualquier otro.
+// Por debajo de 'umbral' bytes no compensa y se comprime en un solo hilo
+final class DeflateParalelo {
+
+    static final int BLOQUE = 128 * 1024;
+
+    // Ventana de deflate: lo que un bloque puede referenciar del anterior
+    private static final int DICCIONARIO = 32 * 1024;
+
+    private DeflateParalelo() {
+    }
+
+    static byte[] comprimir(byte[] data, int longitud, int nivel) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(longitud / 2);
+        try (OutputStream compresor = new Compresor(salida, nivel, 0)) {
+            compresor.write(data, 0, longitud);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error al comprimir con deflate", e);
+        }
+        return salida.toByteArray();
+    }
+
+    // close() termina el flujo pero no cierra out, como ImageUtils.compresor
+    static OutputStream compresor(OutputStream out, int nivel, int umbral) {
+        return new Compresor(out, nivel, umbral);
+    }
+
+    private static class Compresor extends OutputStream {
+
+        private final OutputStream out;
+        private final int nivel;
+        private final int umbral;
+        private byte[] inicial = new byte[0];
+        private int lleno;
+        private boolean paralelo;
+        private byte[] bloque;
+        private byte[] diccionario;
+        private final Adler32 adler = new Adler32();
+        private final ArrayDeque<Future<byte[]>> enVuelo = new ArrayDeque<>();
+        private boolean cerrado;
+
+        Compresor(OutputStream out, int nivel, int umbral) {
+            this.out = out;
+            this.nivel = nivel;
+            this.umbral = umbral;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        // Hasta superar el umbral se acumula lo escrito; al superarlo se empieza con los bloques
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!paralelo) {
+                if ((long) lleno + len <= umbral) {
+                    if (lleno + len > inicial.length) {
+                        inicial = Arrays.copyOf(inicial, Math.min(umbral, Math.max(lleno + len, inicial.length * 2)));
+                    }
+                    System.arraycopy(b, off, inicial, lleno, len);
+                    lleno += len;
+                    return;
+                }
+                paralelo = true;
+                out.write(cabeceraZlib(nivel));
+                byte[] acumulado = inicial;
+                int acumulados = lleno;
+                inicial = null;
+                bloque = new byte[BLOQUE];
+                lleno = 0;
+                anadir(acumulado, 0, acumulados);
+            }
+            anadir(b, off, len);
+        }
+
+        // Un bloque lleno se envia al llegar mas datos, para saber al cerrar cual es el ultimo
+        private void anadir(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (lleno == bloque.length) {
+                    enviarBloque(false);
+                }
+                int n = Math.min(len, bloque.length - lleno);
+                System.arraycopy(b, off, bloque, lleno, n);
+                lleno += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void enviarBloque(boolean ultimo) throws IOException {
+            byte[] datos = bloque;
+            int longitud = lleno;
+            byte[] previo = diccionario;
+            adler.update(datos, 0, longitud);
+            enVuelo.add(PoolCompresion.enviar(() -> comprimirBloque(datos, longitud, previo, nivel, ultimo)));
+            diccionario = Arrays.copyOfRange(datos, Math.max(0, longitud - DICCIONARIO), longitud);
+            bloque = new byte[BLOQUE];
+            lleno = 0;
+            while (enVuelo.size() >= PoolCompresion.VENTANA) {
+                out.write(PoolCompresion.esperar(enVuelo.poll()));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            try {
+                if (!paralelo) {
+                    out.write(ImageUtils.deflateUnHilo(inicial, lleno, nivel));
+                } else {
+                    enviarBloque(true);
+                    while (!enVuelo.isEmpty()) {
+                        out.write(PoolCompresion.esperar(enVuelo.poll()));
+                    }
+                    long suma = adler.getValue();
+                    out.write(new byte[] {(byte) (suma >>> 24), (byte) (suma >>> 16), (byte) (suma >>> 8), (byte) suma});
+                }
+                out.flush();
+            } finally {
+                for (Future<byte[]> pendiente : enVuelo) {
+                    pendiente.cancel(false);
+                }
+            }
+        }
+    }
+
+    // Deflate sin cabecera de un bloque; si no es el ultimo, acaba alineado a byte con un SYNC_FLUSH
+    private static byte[] comprimirBloque(byte[] datos, int longitud, byte[] diccionario, int nivel, boolean ultimo) {
+        Deflater deflater = PoolZlib.deflaterSinCabecera(nivel);
+        try {
+            if (diccionario != null) {
+                deflater.setDictionary(diccionario);
+            }
+            deflater.setInput(datos, 0, longitud);
+            // cota de deflate mas el marcador vacio del SYNC_FLUSH
+            byte[] salida = new byte[longitud + (longitud >> 12) + (longitud >> 14) + 64];
+            int total = 0;
+            if (ultimo) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (total == salida.length) {
+                        salida = Arrays.copyOf(salida, salida.length * 2);
+                    }
+                    total += deflater.deflate(salida, total, salida.length - total);
+                }
+            } else {
+                // el flush ha terminado cuando deflate no llena todo el espacio que se le da
+                while (true) {
+                    if (total == salida.length) {
+                        salida = Arrays.copyOf(salida, salida.length * 2);
+                    }
+                    int n = deflater.deflate(salida, total, salida.length - total, Deflater.SYNC_FLUSH);
+                    total += n;
+                    if (total < salida.length) {
+                        break;
+                    }
+                }
+            }
+            return Arrays.copyOf(salida, total);
+        } finally {
+            PoolZlib.devolverSinCabecera(nivel, deflater);
+        }
+    }
+
+    // CMF 0x78 (deflate, ventana de 32KB) y FLG con el nivel como lo pone zlib, multiplo de 31
+    private static byte[] cabeceraZlib(int nivel) {
+        int flevel = nivel == Deflater.DEFAULT_COMPRESSION ? 2 : nivel < 2 ? 0 : nivel < 6 ? 1 : nivel == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += (31 - ((0x78 << 8) + flg) % 31) % 31;
+        return new byte[] {0x78, (byte) flg};
+    }
+}
@@ -0,0 +1,333 @@
+package com.uma.example.springuma.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.zip.ZipException;
+
+// Contenido partido en bloques de tamaño fijo (sin comprimir), cada uno comprimido por separado en el formato
+// de un solo bloque de CodecImagen. Al final va un indice con la posicion de cada bloque: para leer un rango
+// se salta al bloque donde empieza y solo se descomprime desde ahi.
+//
+//   0x02 | int tamanoBloque | (int longitud | bloque)... | int 0 | long posicion x n | int tamanoBloque | int n | long tamano
+//
+// La posicion es la del int longitud de cada bloque, contando desde el principio del contenido guardado.
+// Al ser independientes, los bloques se comprimen y descomprimen en paralelo en PoolCompresion, con unos
+// pocos en vuelo por flujo (PoolCompresion.VENTANA) y escritos o leidos siempre en orden
+public final class FormatoBloques {
+
+    // tamanoBloque, n y tamano sin comprimir
+    public static final int TAMANO_PIE = 4 + 4 + 8;
+
+    private FormatoBloques() {
+    }
+
+    // Abre el contenido guardado a partir de una posicion
+    @FunctionalInterface
+    public interface Lector {
+        InputStream abrir(long posicion) throws IOException;
+    }
+
+    public record Indice(int tamanoBloque, long tamano, long[] posiciones) {
+    }
+
+    // Como ImageUtils.compresor, pero por bloques. Si todo el contenido cabe en un bloque se guarda en el
+    // formato de un solo bloque (sin indice): el deflate se sigue pudiendo enviar tal cual al cliente
+    public static OutputStream compresor(OutputStream out, CodecImagen codec, int nivel, int tamanoBloque) {
+        return new CompresorBloques(out, codec, nivel, tamanoBloque);
+    }
+
+    // Descomprime todo el contenido (ya leido el byte de cabecera) sobre out, sin pasar por el indice
+    public static long descomprimir(InputStream in, OutputStream out) throws IOException {
+        DataInputStream datos = new DataInputStream(in);
+        LectorBloques lector = new LectorBloques(datos, datos.readInt(), Integer.MAX_VALUE);
+        try {
+            long total = 0;
+            byte[] bloque;
+            while ((bloque = lector.siguienteBloque()) != null) {
+                out.write(bloque);
+                total += bloque.length;
+            }
+            return total;
+        } finally {
+            lector.cancelar();
+        }
+    }
+
+    // Contenido descomprimido para leerlo como stream (ya leido el byte de cabecera)
+    public static InputStream abrir(InputStream in) throws IOException {
+        DataInputStream datos = new DataInputStream(in);
+        return new LectorBloques(datos, datos.readInt(), Integer.MAX_VALUE);
+    }
+
+    // Lee el pie y el indice del final del contenido guardado, de 'tamanoGuardado' bytes
+    public static Indice leerIndice(Lector lector, long tamanoGuardado) throws IOException {
+        int tamanoBloque;
+        int n;
+        long tamano;
+        try (DataInputStream pie = new DataInputStream(lector.abrir(tamanoGuardado - TAMANO_PIE))) {
+            tamanoBloque = pie.readInt();
+            n = pie.readInt();
+            tamano = pie.readLong();
+        }
+        if (tamanoBloque <= 0 || n < 0 || (long) n * 8 > tamanoGuardado - TAMANO_PIE) {
+            throw new ZipException("Indice de bloques no valido");
+        }
+        long[] posiciones = new long[n];
+        try (DataInputStream indice = new DataInputStream(lector.abrir(tamanoGuardado - TAMANO_PIE - (long) n * 8))) {
+            for (int i = 0; i < n; i++) {
+                posiciones[i] = indice.readLong();
+            }
+        }
+        return new Indice(tamanoBloque, tamano, posiciones);
+    }
+
+    // Copia en out 'longitud' bytes del contenido descomprimido a partir de 'desde'. Solo se leen
+    // y descomprimen los bloques que tocan el rango
+    public static void copiarRango(Indice indice, Lector lector, long desde, long longitud, OutputStream out) throws IOException {
+        if (longitud <= 0) {
+            return;
+        }
+        int primero = (int) (desde / indice.tamanoBloque());
+        int ultimo = (int) ((desde + longitud - 1) / indice.tamanoBloque());
+        if (ultimo >= indice.posiciones().length || desde + longitud > indice.tamano()) {
+            throw new EOFException("Rango fuera del contenido");
+        }
+        try (InputStream in = new LectorBloques(new DataInputStream(lector.abrir(indice.posiciones()[primero])),
+                indice.tamanoBloque(), ultimo - primero + 1)) {
+            in.skipNBytes(desde - (long) primero * indice.tamanoBloque());
+            ImageUtils.copy(in, out, longitud);
+        }
+    }
+
+    // Lee los bloques comprimidos en orden y los va descomprimiendo en el pool por delante de quien lee,
+    // hasta 'maximoBloques' o hasta el int 0 que cierra los bloques
+    private static class LectorBloques extends InputStream {
+
+        private final DataInputStream datos;
+        private final int tamanoBloque;
+        private int restantes;
+        private final ArrayDeque<Future<byte[]>> enVuelo = new ArrayDeque<>();
+        private byte[] actual = new byte[0];
+        private int posicion;
+        private boolean terminado;
+
+        LectorBloques(DataInputStream datos, int tamanoBloque, int maximoBloques) {
+            this.datos = datos;
+            this.tamanoBloque = tamanoBloque;
+            this.restantes = maximoBloques;
+        }
+
+        private void llenar() throws IOException {
+            while (!terminado && enVuelo.size() < PoolCompresion.VENTANA) {
+                int longitud = restantes > 0 ? datos.readInt() : 0;
+                if (longitud == 0) {
+                    terminado = true;
+                    return;
+                }
+                if (longitud < 0 || longitud > ImageUtils.cotaCompresion(tamanoBloque)) {
+                    throw new ZipException("Bloque no valido: " + longitud + " bytes");
+                }
+                byte[] comprimido = datos.readNBytes(longitud);
+                if (comprimido.length < longitud) {
+                    throw new EOFException("Contenido por bloques incompleto");
+                }
+                restantes--;
+                enVuelo.add(PoolCompresion.enviar(() -> ImageUtils.decompressImage(comprimido, tamanoBloque)));
+            }
+        }
+
+        // Siguiente bloque descomprimido, o null al terminar
+        byte[] siguienteBloque() throws IOException {
+            llenar();
+            Future<byte[]> siguiente = enVuelo.poll();
+            return siguiente != null ? PoolCompresion.esperar(siguiente) : null;
+        }
+
+        private boolean siguiente() throws IOException {
+            byte[] bloque = siguienteBloque();
+            if (bloque == null) {
+                return false;
+            }
+            actual = bloque;
+            posicion = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (posicion == actual.length) {
+                if (!siguiente()) {
+                    return -1;
+                }
+            }
+            return actual[posicion++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (posicion == actual.length) {
+                if (!siguiente()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, actual.length - posicion);
+            System.arraycopy(actual, posicion, b, off, n);
+            posicion += n;
+            return n;
+        }
+
+        void cancelar() {
+            for (Future<byte[]> pendiente : enVuelo) {
+                pendiente.cancel(false);
+            }
+            enVuelo.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            cancelar();
+            datos.close();
+        }
+    }
+
+    // Acumula un bloque y lo envia a comprimir al pool; los resultados se escriben en orden segun terminan.
+    // La cabecera se escribe con el primer bloque
+    private static class CompresorBloques extends OutputStream {
+
+        private final DataOutputStream out;
+        private final CodecImagen codec;
+        private final int nivel;
+        private final int tamanoBloque;
+        private byte[] bloque;
+        private int lleno;
+        // buffers de bloques ya comprimidos, para no reservar uno nuevo por bloque
+        private final Queue<byte[]> libres = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<Future<byte[]>> enVuelo = new ArrayDeque<>();
+        private long[] posiciones = new long[16];
+        private int n;
+        private long escritos;
+        private long tamano;
+        private boolean iniciado;
+        private boolean cerrado;
+
+        CompresorBloques(OutputStream out, CodecImagen codec, int nivel, int tamanoBloque) {
+            this.out = new DataOutputStream(out);
+            this.codec = codec;
+            this.nivel = nivel;
+            this.tamanoBloque = tamanoBloque;
+            this.bloque = new byte[tamanoBloque];
+        }
+
+        // Un bloque lleno se envia al llegar mas datos: si el contenido ocupa justo un bloque no hace falta indice
+        @Override
+        public void write(int b) throws IOException {
+            if (lleno == bloque.length) {
+                enviarBloque();
+            }
+            bloque[lleno++] = (byte) b;
+            tamano++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (lleno == bloque.length) {
+                    enviarBloque();
+                }
+                int n = Math.min(len, bloque.length - lleno);
+                System.arraycopy(b, off, bloque, lleno, n);
+                lleno += n;
+                tamano += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void enviarBloque() throws IOException {
+            if (!iniciado) {
+                iniciado = true;
+                out.writeByte(CodecImagen.BLOQUES.getCabecera());
+                out.writeInt(tamanoBloque);
+                escritos += 1 + 4;
+            }
+            byte[] datos = bloque;
+            int longitud = lleno;
+            enVuelo.add(PoolCompresion.enviar(() -> {
+                try {
+                    return comprimirBloque(datos, longitud);
+                } finally {
+                    libres.offer(datos);
+                }
+            }));
+            byte[] libre = libres.poll();
+            bloque = libre != null ? libre : new byte[tamanoBloque];
+            lleno = 0;
+            while (enVuelo.size() >= PoolCompresion.VENTANA) {
+                escribirBloque(PoolCompresion.esperar(enVuelo.poll()));
+            }
+        }
+
+        private byte[] comprimirBloque(byte[] datos, int longitud) {
+            byte[] comprimido = ImageUtils.compressImage(datos, longitud, codec, nivel);
+            if (comprimido.length > longitud + 1) {
+                // bloque que no comprime: se guarda tal cual
+                comprimido = ImageUtils.compressImage(datos, longitud, CodecImagen.NINGUNO, 0);
+            }
+            return comprimido;
+        }
+
+        private void escribirBloque(byte[] comprimido) throws IOException {
+            if (n == posiciones.length) {
+                posiciones = Arrays.copyOf(posiciones, n * 2);
+            }
+            posiciones[n++] = escritos;
+            out.writeInt(comprimido.length);
+            out.write(comprimido);
+            escritos += 4 + comprimido.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            try {
+                if (!iniciado) {
+                    out.write(ImageUtils.compressImage(bloque, lleno, codec, nivel));
+                } else {
+                    if (lleno > 0) {
+                        enviarBloque();
+                    }
+                    while (!enVuelo.isEmpty()) {
+                        escribirBloque(PoolCompresion.esperar(enVuelo.poll()));
+                    }
+                    out.writeInt(0);
+                    for (int i = 0; i < n; i++) {
+                        out.writeLong(posiciones[i]);
+                    }
+                    out.writeInt(tamanoBloque);
+                    out.writeInt(n);
+                    out.writeLong(tamano);
+                }
+                out.flush();
+            } finally {
+                for (Future<byte[]> pendiente : enVuelo) {
+                    pendiente.cancel(false);
+                }
+            }
+        }
+    }
+}
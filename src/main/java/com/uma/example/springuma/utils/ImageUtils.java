@@ -1,47 +1,410 @@
 package com.uma.example.springuma.utils;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.github.luben.zstd.RecyclingBufferPool;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+
+// Deflaters e Inflaters salen de PoolZlib y los buffers de trabajo son uno por hilo:
+// comprimir o descomprimir no reserva estado nativo ni buffers intermedios en cada llamada
 public class ImageUtils {
 
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<byte[]> bufferEntrada = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private static final ThreadLocal<byte[]> bufferSalida = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    // Salida de la compresion antes de copiarla a su tamaño real; por encima de este tamaño no se retiene en el hilo
+    private static final int MAXIMO_BUFFER_COMPRESION = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> bufferCompresion = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    // A partir de este tamaño deflate se reparte entre varios nucleos (DeflateParalelo), si los hay
+    private static final int UMBRAL_DEFLATE_PARALELO = 1024 * 1024;
 
     public static byte[] compressImage(byte[] data) {
-        Deflater deflater = new Deflater();
-        deflater.setLevel(Deflater.BEST_COMPRESSION);
-        deflater.setInput(data);
-        deflater.finish();
+        return deflate(data, Deflater.BEST_COMPRESSION);
+    }
 
+    // Admite cualquiera de los formatos de CodecImagen, incluido el zlib de las imagenes antiguas
+    public static byte[] decompressImage(byte[] data) {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-        byte[] tmp = new byte[4*1024];
-        while (!deflater.finished()) {
-            int size = deflater.deflate(tmp);
-            outputStream.write(tmp, 0, size);
-        }
         try {
-            outputStream.close();
+            decompressImage(new ByteArrayInputStream(data), outputStream);
         } catch (Exception ignored) {
         }
         return outputStream.toByteArray();
     }
 
+    // Cuando se conoce el tamaño sin comprimir (Imagen.tamano) se descomprime directamente sobre el array final
+    public static byte[] decompressImage(byte[] data, int tamano) throws IOException {
+        if (data.length == 0) {
+            return data;
+        }
+        switch (CodecImagen.deCabecera(data[0] & 0xff)) {
+            case NINGUNO:
+                return Arrays.copyOfRange(data, 1, data.length);
+            case BLOQUES:
+                ByteArrayOutputStream bloques = new ByteArrayOutputStream(tamano);
+                FormatoBloques.descomprimir(new ByteArrayInputStream(data, 1, data.length - 1), bloques);
+                return bloques.toByteArray();
+            case ZSTD:
+                byte[] salida = new byte[tamano];
+                long escritos = Zstd.decompressByteArray(salida, 0, tamano, data, 1, data.length - 1);
+                if (Zstd.isError(escritos)) {
+                    throw new ZipException("Contenido zstd no valido: " + Zstd.getErrorName(escritos));
+                }
+                return escritos == tamano ? salida : Arrays.copyOf(salida, (int) escritos);
+            default:
+                return inflate(data, tamano);
+        }
+    }
+
+    // Comprime con el codec indicado; salvo en deflate (zlib), el resultado lleva delante el byte del codec
+    public static byte[] compressImage(byte[] data, CodecImagen codec, int nivel) {
+        return compressImage(data, data.length, codec, nivel);
+    }
 
+    // Solo los primeros 'longitud' bytes de data
+    public static byte[] compressImage(byte[] data, int longitud, CodecImagen codec, int nivel) {
+        if (codec == CodecImagen.DEFLATE) {
+            return deflate(data, longitud, nivel);
+        }
+        if (codec == CodecImagen.NINGUNO) {
+            byte[] salida = new byte[longitud + 1];
+            salida[0] = (byte) codec.getCabecera();
+            System.arraycopy(data, 0, salida, 1, longitud);
+            return salida;
+        }
+        if (codec != CodecImagen.ZSTD) {
+            throw new IllegalArgumentException("Codec no valido para comprimir: " + codec);
+        }
+        byte[] salida = bufferCompresion(1 + (int) Zstd.compressBound(longitud));
+        salida[0] = (byte) codec.getCabecera();
+        long escritos = Zstd.compressByteArray(salida, 1, salida.length - 1, data, 0, longitud, nivel);
+        if (Zstd.isError(escritos)) {
+            throw new IllegalStateException("Error al comprimir con zstd: " + Zstd.getErrorName(escritos));
+        }
+        return Arrays.copyOf(salida, 1 + (int) escritos);
+    }
 
-    public static byte[] decompressImage(byte[] data) {
-        Inflater inflater = new Inflater();
-        inflater.setInput(data);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-        byte[] tmp = new byte[4*1024];
+    // Version en streaming de compressImage(data, codec, nivel): lo escrito llega comprimido a out, en el mismo formato.
+    // close() termina el formato (y devuelve el Deflater al pool) pero no cierra out
+    public static OutputStream compresor(OutputStream out, CodecImagen codec, int nivel) throws IOException {
+        if (codec == CodecImagen.DEFLATE && PoolCompresion.HILOS > 1) {
+            return DeflateParalelo.compresor(out, nivel, UMBRAL_DEFLATE_PARALELO);
+        }
+        if (codec == CodecImagen.DEFLATE) {
+            Deflater deflater = PoolZlib.deflater(nivel);
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                private boolean cerrado;
+
+                @Override
+                public void close() throws IOException {
+                    if (!cerrado) {
+                        cerrado = true;
+                        try {
+                            finish();
+                            out.flush();
+                        } finally {
+                            PoolZlib.devolver(nivel, deflater);
+                        }
+                    }
+                }
+            };
+        }
+        out.write(codec.getCabecera());
+        if (codec == CodecImagen.NINGUNO) {
+            return sinCerrar(out);
+        }
+        return new ZstdOutputStreamNoFinalizer(sinCerrar(out), RecyclingBufferPool.INSTANCE, nivel);
+    }
+
+    private static OutputStream sinCerrar(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    // La salida se escribe en un buffer del hilo con la cota maxima de zlib para el tamaño de entrada:
+    // una sola llamada a deflate y una copia final al tamaño real, sin ir creciendo un ByteArrayOutputStream
+    private static byte[] deflate(byte[] data, int nivel) {
+        return deflate(data, data.length, nivel);
+    }
+
+    private static byte[] deflate(byte[] data, int longitud, int nivel) {
+        if (longitud > UMBRAL_DEFLATE_PARALELO && PoolCompresion.HILOS > 1) {
+            return DeflateParalelo.comprimir(data, longitud, nivel);
+        }
+        return deflateUnHilo(data, longitud, nivel);
+    }
+
+    static byte[] deflateUnHilo(byte[] data, int longitud, int nivel) {
+        Deflater deflater = PoolZlib.deflater(nivel);
+        try {
+            deflater.setInput(data, 0, longitud);
+            deflater.finish();
+            byte[] salida = bufferCompresion(cotaDeflate(longitud));
+            int total = 0;
+            while (!deflater.finished()) {
+                if (total == salida.length) {
+                    salida = Arrays.copyOf(salida, salida.length * 2);
+                }
+                total += deflater.deflate(salida, total, salida.length - total);
+            }
+            return Arrays.copyOf(salida, total);
+        } finally {
+            PoolZlib.devolver(nivel, deflater);
+        }
+    }
+
+    private static byte[] bufferCompresion(int tamano) {
+        byte[] buffer = bufferCompresion.get();
+        if (buffer.length < tamano) {
+            buffer = new byte[tamano];
+            if (tamano <= MAXIMO_BUFFER_COMPRESION) {
+                bufferCompresion.set(buffer);
+            }
+        }
+        return buffer;
+    }
+
+    // deflateBound de zlib mas la cabecera y el adler32 del formato zlib
+    private static int cotaDeflate(int tamano) {
+        return tamano + (tamano >> 12) + (tamano >> 14) + (tamano >> 25) + 13 + 6;
+    }
+
+    // Tamaño maximo que puede ocupar comprimido con cualquier codec un contenido de 'tamano' bytes
+    static int cotaCompresion(int tamano) {
+        return Math.max(cotaDeflate(tamano), 1 + (int) Zstd.compressBound(tamano));
+    }
+
+    private static byte[] inflate(byte[] data, int tamano) throws IOException {
+        Inflater inflater = PoolZlib.inflater();
         try {
+            inflater.setInput(data);
+            byte[] salida = new byte[tamano];
+            int total = 0;
             while (!inflater.finished()) {
-                int count = inflater.inflate(tmp);
-                outputStream.write(tmp, 0, count);
+                if (total == salida.length) {
+                    // el tamaño guardado se queda corto (imagenes antiguas): se sigue creciendo
+                    salida = Arrays.copyOf(salida, Math.max(BUFFER_SIZE, salida.length * 2));
+                }
+                int n = inflater.inflate(salida, total, salida.length - total);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Contenido comprimido incompleto");
+                }
+                total += n;
             }
-            outputStream.close();
-        } catch (Exception ignored) {
+            return total == salida.length ? salida : Arrays.copyOf(salida, total);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            PoolZlib.devolver(inflater);
+        }
+    }
+
+    // Descomprime de un stream a otro con un buffer fijo, sin materializar la imagen en memoria.
+    // El formato se decide por el primer byte del contenido guardado
+    public static long decompressImage(InputStream compressed, OutputStream out) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(compressed, 1);
+        int cabecera = in.read();
+        if (cabecera == -1) {
+            return 0;
+        }
+        switch (CodecImagen.deCabecera(cabecera)) {
+            case NINGUNO:
+                return copy(in, out);
+            case ZSTD:
+                try (ZstdInputStreamNoFinalizer zstd = new ZstdInputStreamNoFinalizer(in, RecyclingBufferPool.INSTANCE)) {
+                    return copy(zstd, out);
+                }
+            case BLOQUES:
+                return FormatoBloques.descomprimir(in, out);
+            default:
+                // el byte de cabecera de zlib forma parte del flujo
+                in.unread(cabecera);
+                return inflate(in, out);
+        }
+    }
+
+    // Como decompressImage(compressed, out) pero para quien necesita leer el contenido descomprimido (ImageIO).
+    // Cerrar el stream devuelto cierra compressed y devuelve el Inflater al pool
+    public static InputStream abrirDescomprimido(InputStream compressed) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(compressed, 1);
+        int cabecera = in.read();
+        if (cabecera == -1) {
+            return in;
+        }
+        switch (CodecImagen.deCabecera(cabecera)) {
+            case NINGUNO:
+                return in;
+            case ZSTD:
+                return new ZstdInputStreamNoFinalizer(in, RecyclingBufferPool.INSTANCE);
+            case BLOQUES:
+                return FormatoBloques.abrir(in);
+            default:
+                in.unread(cabecera);
+                Inflater inflater = PoolZlib.inflater();
+                return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                    private boolean cerrado;
+
+                    @Override
+                    public void close() throws IOException {
+                        if (!cerrado) {
+                            cerrado = true;
+                            try {
+                                super.close();
+                            } finally {
+                                PoolZlib.devolver(inflater);
+                            }
+                        }
+                    }
+                };
+        }
+    }
+
+    private static long inflate(InputStream compressed, OutputStream out) throws IOException {
+        Inflater inflater = PoolZlib.inflater();
+        byte[] entrada = bufferEntrada.get();
+        byte[] salida = bufferSalida.get();
+        long total = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    int leidos = compressed.read(entrada);
+                    if (leidos == -1) {
+                        throw new EOFException("Contenido comprimido incompleto");
+                    }
+                    inflater.setInput(entrada, 0, leidos);
+                }
+                int n = inflater.inflate(salida);
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Contenido zlib con diccionario no soportado");
+                }
+                out.write(salida, 0, n);
+                total += n;
+            }
+            return total;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            PoolZlib.devolver(inflater);
+        }
+    }
+
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = bufferSalida.get();
+        long total = 0;
+        int leidos;
+        while ((leidos = in.read(buffer)) != -1) {
+            out.write(buffer, 0, leidos);
+            total += leidos;
+        }
+        return total;
+    }
+
+    // Copia exactamente 'longitud' bytes de in
+    public static void copy(InputStream in, OutputStream out, long longitud) throws IOException {
+        byte[] buffer = bufferSalida.get();
+        while (longitud > 0) {
+            int leidos = in.read(buffer, 0, (int) Math.min(buffer.length, longitud));
+            if (leidos == -1) {
+                throw new EOFException("Faltan " + longitud + " bytes");
+            }
+            out.write(buffer, 0, leidos);
+            longitud -= leidos;
+        }
+    }
+
+    // Copia reducida (PNG) de la imagen a como mucho 'ancho' pixeles de ancho, manteniendo la proporcion.
+    // El decodificador solo lee 1 de cada N pixeles (subsampling) hasta quedarse cerca del doble del ancho
+    // pedido, asi que la memoria depende del tamaño de la miniatura y no del de la imagen original.
+    // Devuelve false si el contenido no es una imagen que ImageIO sepa leer
+    public static boolean escalarImagen(InputStream original, int ancho, OutputStream out) throws IOException {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(original)) {
+            Iterator<ImageReader> lectores = entrada != null ? ImageIO.getImageReaders(entrada) : null;
+            if (lectores == null || !lectores.hasNext()) {
+                return false;
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                int paso = Math.max(1, lector.getWidth(0) / (ancho * 2));
+                ImageReadParam parametros = lector.getDefaultReadParam();
+                parametros.setSourceSubsampling(paso, paso, 0, 0);
+                BufferedImage leida = lector.read(0, parametros);
+                BufferedImage reducida = leida;
+                if (leida.getWidth() > ancho) {
+                    int alto = Math.max(1, (int) Math.round((double) leida.getHeight() * ancho / leida.getWidth()));
+                    int tipo = leida.getType() == BufferedImage.TYPE_BYTE_GRAY ? BufferedImage.TYPE_BYTE_GRAY
+                        : leida.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+                    reducida = new BufferedImage(ancho, alto, tipo);
+                    Graphics2D g = reducida.createGraphics();
+                    try {
+                        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                        g.drawImage(leida, 0, 0, ancho, alto, null);
+                    } finally {
+                        g.dispose();
+                    }
+                }
+                return ImageIO.write(reducida, "png", out);
+            } finally {
+                lector.dispose();
+            }
+        }
+    }
+
+    // Huella SHA-256 (hex) del contenido sin comprimir, identifica imagenes con los mismos bytes
+    public static String hashImage(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    // Para calcular la misma huella que hashImage por partes, segun llegan los bytes
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        return outputStream.toByteArray();
     }
 
 }
@@ -0,0 +1,85 @@
+package com.uma.example.springuma.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hilos para comprimir y descomprimir bloques en paralelo, aparte de los de Tomcat: uno por nucleo y cola
+// acotada. Con la cola llena la tarea la ejecuta el hilo que la envia, que mientras tanto deja de leer o
+// aceptar bloques nuevos; asi una subida grande nunca deja sin CPU al resto de peticiones mas de lo que lo
+// haria comprimiendo ella sola
+final class PoolCompresion {
+
+    static final int HILOS = Runtime.getRuntime().availableProcessors();
+
+    // Bloques en vuelo por cada flujo: los justos para tener ocupados todos los hilos
+    static final int VENTANA = HILOS + 1;
+
+    private static final ThreadPoolExecutor executor;
+
+    private static final ThreadLocal<Boolean> enPool = ThreadLocal.withInitial(() -> false);
+
+    static {
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(HILOS, HILOS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(HILOS * 2),
+            r -> {
+                Thread t = new Thread(() -> {
+                    enPool.set(true);
+                    r.run();
+                }, "compresion-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private PoolCompresion() {
+    }
+
+    // Desde un hilo del pool (un bloque que a su vez se comprime en paralelo) la tarea se ejecuta en el
+    // momento: esperar a tareas encoladas detras podria bloquear todos los hilos
+    static <T> Future<T> enviar(Callable<T> tarea) {
+        if (enPool.get()) {
+            FutureTask<T> enElMomento = new FutureTask<>(tarea);
+            enElMomento.run();
+            return enElMomento;
+        }
+        return executor.submit(tarea);
+    }
+
+    // Espera el resultado; los errores de la tarea se relanzan tal cual
+    static <T> T esperar(Future<T> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            futuro.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) {
+                throw io;
+            }
+            if (causa instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (causa instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (causa instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(causa);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.uma.example.springuma.utils;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflaters e Inflaters reutilizables entre llamadas. Cada instancia reserva su estado nativo de zlib una vez;
+// al devolverla se hace reset() y, si el pool ya esta lleno, end() para liberar esa memoria en el momento
+// en vez de esperar al Cleaner. Un Deflater conserva su nivel, asi que hay un pool por nivel
+final class PoolZlib {
+
+    private static final int MAXIMO = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final Map<Integer, BlockingQueue<Deflater>> deflaters = new ConcurrentHashMap<>();
+
+    // Deflate sin la cabecera ni el adler32 de zlib (nowrap), para los bloques de DeflateParalelo
+    private static final Map<Integer, BlockingQueue<Deflater>> deflatersSinCabecera = new ConcurrentHashMap<>();
+
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(MAXIMO);
+
+    private PoolZlib() {
+    }
+
+    static Deflater deflater(int nivel) {
+        Deflater deflater = deflatersDeNivel(nivel).poll();
+        return deflater != null ? deflater : new Deflater(nivel);
+    }
+
+    static void devolver(int nivel, Deflater deflater) {
+        deflater.reset();
+        if (!deflatersDeNivel(nivel).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    static Deflater deflaterSinCabecera(int nivel) {
+        Deflater deflater = deflatersSinCabecera.computeIfAbsent(nivel, n -> new ArrayBlockingQueue<>(MAXIMO)).poll();
+        return deflater != null ? deflater : new Deflater(nivel, true);
+    }
+
+    static void devolverSinCabecera(int nivel, Deflater deflater) {
+        deflater.reset();
+        if (!deflatersSinCabecera.computeIfAbsent(nivel, n -> new ArrayBlockingQueue<>(MAXIMO)).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    static Inflater inflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    static void devolver(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static BlockingQueue<Deflater> deflatersDeNivel(int nivel) {
+        return deflaters.computeIfAbsent(nivel, n -> new ArrayBlockingQueue<>(MAXIMO));
+    }
+}
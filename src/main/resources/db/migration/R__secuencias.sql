@@ -0,0 +1,7 @@
+-- Cada secuencia avanza de secuencias.asignacion en secuencias.asignacion, lo mismo que reserva
+-- SecuenciaAgrupada en cada llamada. Flyway la vuelve a aplicar cuando cambia el valor
+alter sequence medico_seq increment by ${asignacion};
+alter sequence paciente_seq increment by ${asignacion};
+alter sequence imagen_seq increment by ${asignacion};
+alter sequence informe_seq increment by ${asignacion};
+alter sequence prediccion_seq increment by ${asignacion};
@@ -0,0 +1,52 @@
+-- Medicos, pacientes, imagenes e informes.
+-- IF NOT EXISTS en todo: las bases de datos creadas antes con ddl-auto=update no tienen historial y se
+-- migran desde la version 0 (ver spring.flyway.baseline-version). Por eso las restricciones llevan los
+-- nombres que les daba Hibernate, para no duplicarlas
+
+create sequence if not exists medico_seq start with 1 increment by 50;
+create sequence if not exists paciente_seq start with 1 increment by 50;
+create sequence if not exists imagen_seq start with 1 increment by 50;
+create sequence if not exists informe_seq start with 1 increment by 50;
+
+create table if not exists medico (
+    id bigint not null,
+    dni varchar(255),
+    especialidad varchar(255),
+    nombre varchar(255),
+    primary key (id),
+    constraint uk_bxikgoxgf4c1147wat5jth878 unique (dni)
+);
+
+create table if not exists paciente (
+    id bigint not null,
+    edad integer,
+    medico_id bigint,
+    cita varchar(255),
+    dni varchar(255),
+    nombre varchar(255),
+    primary key (id),
+    constraint uk_wr6kxhpayd3jdludsytbn8ag unique (dni)
+);
+
+create table if not exists imagen (
+    id bigint not null,
+    fecha timestamp(6),
+    paciente_id bigint,
+    nombre varchar(255),
+    primary key (id)
+);
+
+create table if not exists informe (
+    id bigint not null,
+    imagen_id bigint,
+    contenido text,
+    prediccion varchar(255),
+    primary key (id)
+);
+
+alter table paciente add constraint if not exists fkdb6ggrau4kxv0xcu8n17bmn9u
+    foreign key (medico_id) references medico (id) on delete cascade;
+alter table imagen add constraint if not exists fkimrycmhlrxo3mct9129vhslet
+    foreign key (paciente_id) references paciente (id) on delete cascade;
+alter table informe add constraint if not exists fk6eiijurdyxky4959wf40p9kiv
+    foreign key (imagen_id) references imagen (id) on delete cascade;
@@ -0,0 +1,21 @@
+-- El contenido de las imagenes pasa al ImageStore: la imagen guarda su referencia, el hash y el tamano.
+-- La columna file_content de bases de datos antiguas la vacia y la borra MigracionContenidoImagenes
+
+alter table imagen add column if not exists referencia varchar(255);
+alter table imagen add column if not exists hash varchar(64);
+alter table imagen add column if not exists tamano bigint;
+alter table imagen add column if not exists tipo_contenido varchar(255);
+
+-- Almacen en base de datos (imagen.store=database), por hash del contenido
+create table if not exists blob_imagen (
+    clave varchar(64) not null,
+    datos blob,
+    primary key (clave)
+);
+
+-- Cuantas imagenes apuntan a cada contenido, para borrarlo con la ultima
+create table if not exists blob_referencias (
+    hash varchar(64) not null,
+    referencias bigint not null,
+    primary key (hash)
+);
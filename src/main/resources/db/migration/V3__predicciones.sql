@@ -0,0 +1,37 @@
+-- Cache persistente de predicciones por modelo y hash del contenido
+create table if not exists prediccion_cache (
+    clave varchar(512) not null,
+    modelo varchar(255),
+    hash varchar(64),
+    resultado varchar(2048),
+    fecha timestamp(6),
+    primary key (clave)
+);
+
+-- Resultados estructurados de las predicciones, enlazados desde el informe
+create sequence if not exists prediccion_seq start with 1 increment by 50;
+
+create table if not exists prediccion (
+    id bigint not null,
+    imagen_id bigint,
+    etiqueta varchar(16),
+    puntuacion_sin_cancer float(53),
+    puntuacion_cancer float(53),
+    modelo varchar(255),
+    latencia_ms bigint,
+    cacheada boolean,
+    fecha timestamp(6),
+    hash varchar(64),
+    primary key (id)
+);
+
+alter table prediccion add constraint if not exists fkmj0tmrtfi0xg7hlanceh8fjcs
+    foreign key (imagen_id) references imagen (id) on delete cascade;
+
+create index if not exists idx_prediccion_imagen on prediccion (imagen_id);
+create index if not exists idx_prediccion_etiqueta on prediccion (etiqueta, puntuacion_cancer);
+create index if not exists idx_prediccion_fecha on prediccion (fecha);
+
+alter table informe add column if not exists resultado_id bigint;
+alter table informe add constraint if not exists fkbrvn8g0lvahuxt5evfnk917sd
+    foreign key (resultado_id) references prediccion (id) on delete set null;
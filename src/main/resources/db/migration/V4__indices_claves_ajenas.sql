@@ -0,0 +1,6 @@
+-- Listados por pagina de los hijos de un medico, paciente o imagen (ver Pagina): por la clave ajena y
+-- despues por id, o por fecha y id, para no recorrer ni ordenar la tabla entera
+create index if not exists idx_paciente_medico on paciente (medico_id, id);
+create index if not exists idx_imagen_paciente on imagen (paciente_id, id);
+create index if not exists idx_imagen_paciente_fecha on imagen (paciente_id, fecha, id);
+create index if not exists idx_informe_imagen on informe (imagen_id, id);
@@ -0,0 +1,97 @@
+package com.uma.example.springuma.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uma.example.springuma.utils.CodecImagen;
+import com.uma.example.springuma.utils.FormatoBloques;
+import com.uma.example.springuma.utils.ImageUtils;
+
+// Subida y descarga de una imagen grande (64MB) comprimida en un solo flujo frente a por bloques, que
+// se comprimen y descomprimen en paralelo. Con varios nucleos, deflate en un solo flujo tambien comprime en
+// paralelo (DeflateParalelo); su descompresion es siempre en un hilo. Un solo hilo de benchmark, como una
+// unica subida:
+//
+//   mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath org.openjdk.jmh.Main FormatoBloquesBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FormatoBloquesBenchmark {
+
+    private static final int TAMANO = 64 * 1024 * 1024;
+
+    private static final int BLOQUE = 256 * 1024;
+
+    @Param({"deflate", "zstd"})
+    private String codec;
+
+    private byte[] datos;
+
+    private byte[] unFlujo;
+
+    private byte[] porBloques;
+
+    // Ruido sobre un patron: comprime, pero no tan rapido como un patron puro
+    @Setup
+    public void setup() throws IOException {
+        datos = new byte[TAMANO];
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < datos.length; i++) {
+            datos[i] = (byte) ((i / 64) % 16 + (aleatorio.nextInt(8) == 0 ? aleatorio.nextInt(256) : 0));
+        }
+        unFlujo = comprimirUnFlujo();
+        porBloques = comprimirPorBloques();
+    }
+
+    @Benchmark
+    public byte[] comprimirUnFlujo() throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(TAMANO / 2);
+        try (OutputStream comprimido = ImageUtils.compresor(salida, getCodec(), 6)) {
+            comprimido.write(datos);
+        }
+        return salida.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] comprimirPorBloques() throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(TAMANO / 2);
+        try (OutputStream comprimido = FormatoBloques.compresor(salida, getCodec(), 6, BLOQUE)) {
+            comprimido.write(datos);
+        }
+        return salida.toByteArray();
+    }
+
+    @Benchmark
+    public long descomprimirUnFlujo() throws IOException {
+        return ImageUtils.decompressImage(new ByteArrayInputStream(unFlujo), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long descomprimirPorBloques() throws IOException {
+        return ImageUtils.decompressImage(new ByteArrayInputStream(porBloques), OutputStream.nullOutputStream());
+    }
+
+    private CodecImagen getCodec() {
+        return CodecImagen.deNombre(codec);
+    }
+}
@@ -0,0 +1,112 @@
+package com.uma.example.springuma.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uma.example.springuma.utils.ImageUtils;
+
+// Compara compressImage/decompressImage con Deflater/Inflater del pool frente a la implementacion
+// anterior (instancia nueva y buffer de 4KB por llamada, sin end()). Con -prof gc se obtiene
+// gc.alloc.rate.norm: bytes reservados por operacion.
+//
+//   mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath org.openjdk.jmh.Main ImageUtilsBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ImageUtilsBenchmark {
+
+    // healthy.png (ya comprimida, como las imagenes reales) o un contenido sintetico que si comprime
+    @Param({"png", "comprimible"})
+    private String contenido;
+
+    private byte[] datos;
+
+    private byte[] comprimido;
+
+    @Setup
+    public void setup() throws IOException {
+        if (contenido.equals("png")) {
+            datos = Files.readAllBytes(Path.of("src/test/resources/healthy.png"));
+        } else {
+            datos = new byte[256 * 1024];
+            for (int i = 0; i < datos.length; i++) {
+                datos[i] = (byte) ((i / 64) % 16);
+            }
+        }
+        comprimido = ImageUtils.compressImage(datos);
+    }
+
+    @Benchmark
+    public byte[] comprimirAntes() {
+        return compressImageAntes(datos);
+    }
+
+    @Benchmark
+    public byte[] comprimirPool() {
+        return ImageUtils.compressImage(datos);
+    }
+
+    @Benchmark
+    public byte[] descomprimirAntes() {
+        return decompressImageAntes(comprimido);
+    }
+
+    @Benchmark
+    public byte[] descomprimirPool() throws IOException {
+        return ImageUtils.decompressImage(comprimido, datos.length);
+    }
+
+    // Implementacion de ImageUtils antes del pool, tal cual
+    private static byte[] compressImageAntes(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setLevel(Deflater.BEST_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
+        byte[] tmp = new byte[4*1024];
+        while (!deflater.finished()) {
+            int size = deflater.deflate(tmp);
+            outputStream.write(tmp, 0, size);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] decompressImageAntes(byte[] data) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
+        byte[] tmp = new byte[4*1024];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(tmp);
+                outputStream.write(tmp, 0, count);
+            }
+        } catch (Exception ignored) {
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+package com.uma.example.springuma.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.uma.example.springuma.SpringumaApplication;
+import com.uma.example.springuma.model.Paciente;
+import com.uma.example.springuma.model.PacienteService;
+
+// Alta de 100.000 pacientes con la aplicacion completa, contra una base de datos H2 en memoria servida por
+// TCP para que cada sentencia sea una ida y vuelta por la red, como con un servidor de base de datos:
+//  - uno-a-uno: como antes, un id de la secuencia por paciente (secuencias.asignacion=1), sin lotes JDBC
+//    y un saveAndFlush (una transaccion) por paciente
+//  - agrupado: ids reservados de 50 en 50, lotes JDBC de 50 con las inserciones ordenadas y addPacientes
+//    de 1.000 en 1.000
+//
+//   mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath org.openjdk.jmh.Main PacientesInsercionBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PacientesInsercionBenchmark {
+
+    private static final int PACIENTES = 100_000;
+
+    private static final int POR_TRANSACCION = 1_000;
+
+    @Param({"uno-a-uno", "agrupado"})
+    private String modo;
+
+    private Server servidor;
+
+    private ConfigurableApplicationContext context;
+
+    private PacienteService pacienteService;
+
+    // Los dni son unicos: cada iteracion sigue la numeracion de la anterior
+    private long siguienteDni;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        boolean agrupado = modo.equals("agrupado");
+        try {
+            servidor = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        } catch (SQLException e) {
+            throw new IllegalStateException("No se pudo arrancar el servidor H2", e);
+        }
+        context = new SpringApplicationBuilder(SpringumaApplication.class).run(
+            "--spring.main.web-application-type=none",
+            "--spring.main.banner-mode=off",
+            "--logging.level.root=WARN",
+            "--spring.datasource.url=jdbc:h2:tcp://localhost:" + servidor.getPort() + "/mem:benchmark_" + modo,
+            "--secuencias.asignacion=" + (agrupado ? 50 : 1),
+            "--spring.jpa.properties.hibernate.jdbc.batch_size=" + (agrupado ? 50 : 1),
+            "--spring.jpa.properties.hibernate.order_inserts=" + agrupado,
+            "--spring.jpa.properties.hibernate.order_updates=" + agrupado);
+        pacienteService = context.getBean(PacienteService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        servidor.stop();
+    }
+
+    @Benchmark
+    public int insertarPacientes() {
+        if (modo.equals("agrupado")) {
+            int insertados = 0;
+            while (insertados < PACIENTES) {
+                List<Paciente> lote = new ArrayList<>(POR_TRANSACCION);
+                for (int i = 0; i < POR_TRANSACCION; i++) {
+                    lote.add(nuevoPaciente());
+                }
+                insertados += pacienteService.addPacientes(lote).size();
+            }
+            return insertados;
+        }
+        for (int i = 0; i < PACIENTES; i++) {
+            pacienteService.addPaciente(nuevoPaciente());
+        }
+        return PACIENTES;
+    }
+
+    private Paciente nuevoPaciente() {
+        long n = siguienteDni++;
+        Paciente paciente = new Paciente();
+        paciente.setDni(String.format("%08dB", n));
+        paciente.setNombre("Paciente" + n);
+        paciente.setEdad((int) (n % 100));
+        return paciente;
+    }
+}
@@ -13,28 +13,60 @@ import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uma.example.springuma.integration.base.ServidorPrediccionLocal;
 import com.uma.example.springuma.model.Imagen;
+import com.uma.example.springuma.model.ImagenInfo;
 import com.uma.example.springuma.model.Medico;
 import com.uma.example.springuma.model.Paciente;
+import com.uma.example.springuma.model.ReferenciasBlob;
+import com.uma.example.springuma.utils.ImageUtils;
 
 import jakarta.annotation.PostConstruct;
 import reactor.core.publisher.Mono;
@@ -45,11 +77,24 @@ class ImagenControllerWebTestClientIT {
 
     @LocalServerPort
     private Integer port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReferenciasBlob referenciasBlob;
+
     private WebTestClient client;
     private Medico medico;
     private Paciente paciente;
     //private Imagen imagen;
 
+    // Las predicciones van al sustituto local de la API, no a la red
+    @DynamicPropertySource
+    static void predictor(DynamicPropertyRegistry registry) {
+        ServidorPrediccionLocal.conectar(registry);
+    }
+
     @PostConstruct
     public void init(){
         client = WebTestClient.bindToServer().baseUrl("http://localhost:"+port)
@@ -144,7 +189,7 @@ class ImagenControllerWebTestClientIT {
             .expectStatus().is2xxSuccessful().returnResult(String.class);
             
         FluxExchangeResult<String> response = client.get()
-            .uri("/imagen/predict/1")
+            .uri("/imagen/predict/" + ultimaImagen())
             .exchange()
             .expectStatus().isOk()
             .returnResult(String.class);
@@ -186,7 +231,7 @@ class ImagenControllerWebTestClientIT {
             .expectStatus().is2xxSuccessful().returnResult(String.class);
             
         FluxExchangeResult<String> response = client.get()
-            .uri("/imagen/predict/1")
+            .uri("/imagen/predict/" + ultimaImagen())
             .exchange()
             .expectStatus().isOk()
             .returnResult(String.class);
@@ -195,5 +240,646 @@ class ImagenControllerWebTestClientIT {
         String expected = "Cancer (label 1)";
         assertTrue(result.contains(expected));
     }
-    
+
+    @Test
+    @DisplayName("Si el modelo se esta cargando la prediccion se reintenta y termina bien")
+	void predictWhileModelLoading_retriesAndReturnsPrediction() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        subirImagenClara();
+
+        ServidorPrediccionLocal servidor = ServidorPrediccionLocal.get();
+        int llamadas = servidor.getLlamadas();
+        servidor.encolar(new ServidorPrediccionLocal.Respuesta(503,
+            "{\"error\": \"Model is currently loading\", \"estimated_time\": 0.1}", 0));
+
+        String result = client.get()
+            .uri("/imagen/predict/" + ultimaImagen())
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(String.class)
+            .getResponseBody().blockFirst();
+
+        assertTrue(result.contains("Not cancer (label 0)"));
+        assertEquals(llamadas + 2, servidor.getLlamadas());
+    }
+
+    @Test
+    @DisplayName("Dos predicciones simultaneas de la misma imagen hacen una sola llamada al modelo")
+	void predictSameImageConcurrently_callsModelOnce() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        subirImagenClara();
+        long id = ultimaImagen();
+
+        // el modelo tarda lo bastante para que la segunda llegue con la primera en curso
+        ServidorPrediccionLocal servidor = ServidorPrediccionLocal.get();
+        int llamadas = servidor.getLlamadas();
+        servidor.encolar(new ServidorPrediccionLocal.Respuesta(200,
+            "[{\"label\": \"LABEL_0\", \"score\": 0.9}, {\"label\": \"LABEL_1\", \"score\": 0.1}]", 1000));
+
+        ExecutorService hilos = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> predicciones = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                predicciones.add(hilos.submit(() -> client.get()
+                    .uri("/imagen/predict/" + id)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .returnResult(String.class)
+                    .getResponseBody().blockFirst()));
+            }
+            for (Future<String> prediccion : predicciones) {
+                assertTrue(prediccion.get().contains("Not cancer (label 0)"));
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        assertEquals(llamadas + 1, servidor.getLlamadas());
+    }
+
+    @Test
+    @DisplayName("El listado de imagenes se recorre por paginas siguiendo el cursor, por id y por fecha")
+	void listImagesByPages_followCursor_returnAllImagesOnce() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        for (int i = 0; i < 3; i++) {
+            subirImagenClara();
+        }
+
+        List<Long> todas = client.get().uri("/imagen/paciente/1?tamano=1000")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist("X-Siguiente-Cursor")
+            .expectBodyList(ImagenInfo.class).returnResult().getResponseBody()
+            .stream().map(ImagenInfo::id).toList();
+        assertTrue(todas.size() >= 3);
+
+        for (String orden : List.of("id", "fecha")) {
+            List<Long> recorridas = new ArrayList<>();
+            String cursor = null;
+            do {
+                EntityExchangeResult<List<ImagenInfo>> pagina = client.get()
+                    .uri("/imagen/paciente/1?tamano=2&orden=" + orden + (cursor != null ? "&despues=" + cursor : ""))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(ImagenInfo.class).returnResult();
+                assertTrue(pagina.getResponseBody().size() <= 2);
+                pagina.getResponseBody().forEach(imagen -> recorridas.add(imagen.id()));
+                cursor = pagina.getResponseHeaders().getFirst("X-Siguiente-Cursor");
+                if (cursor != null) {
+                    assertTrue(pagina.getResponseHeaders().getFirst("Link").contains("despues=" + cursor));
+                }
+            } while (cursor != null);
+            assertEquals(todas, recorridas.stream().sorted().toList());
+        }
+
+        // por numero de pagina, la segunda empieza donde acaba la primera
+        List<ImagenInfo> segunda = client.get().uri("/imagen/paciente/1?tamano=2&pagina=1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(ImagenInfo.class).returnResult().getResponseBody();
+        assertEquals(todas.get(2), segunda.get(0).id());
+
+        client.get().uri("/imagen/paciente/1?tamano=0").exchange().expectStatus().isBadRequest();
+        client.get().uri("/imagen/paciente/1?despues=x").exchange().expectStatus().isBadRequest();
+    }
+
+    // Imagen clara con bytes distintos en cada llamada, para que no este en la cache de predicciones
+    private void subirImagenClara() throws IOException {
+        BufferedImage clara = new BufferedImage(40, 40, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 40; x++) {
+                clara.setRGB(x, y, 0xF0F0F0);
+            }
+        }
+        clara.setRGB(0, 0, (int) (System.nanoTime() & 0xFFFFFF));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(clara, "png", png);
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new ByteArrayResource(png.toByteArray()) {
+            @Override
+            public String getFilename() {
+                return "clara.png";
+            }
+        });
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+    }
+
+    // Los tests comparten contexto: la imagen recien subida es la de mayor id del paciente
+    private long ultimaImagen() {
+        return client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().mapToLong(Imagen::getId).max().orElseThrow();
+    }
+
+    @Test
+    @DisplayName("La prediccion en lote de un paciente devuelve una linea por imagen")
+	void saveTwoImages_predictBatchByPaciente_returnOneLinePerImage() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        // la misma imagen dos veces: el lote solo debe llamar una vez al modelo
+        for (int i = 0; i < 2; i++) {
+            MultipartBodyBuilder builder = new MultipartBodyBuilder();
+            builder.part("image", new FileSystemResource("./src/test/resources/healthy.png"));
+            builder.part("paciente", paciente);
+            client.post()
+                .uri("/imagen")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().is2xxSuccessful();
+        }
+
+        List<Long> esperados = client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().map(Imagen::getId).sorted().toList();
+        assertTrue(esperados.size() >= 2);
+
+        List<String> lineas = client.post()
+            .uri("/imagen/predict/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"pacienteId\": 1}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .returnResult(String.class)
+            .getResponseBody().collectList().block();
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<Long> ids = lineas.stream()
+            .filter(linea -> !linea.isBlank())
+            .map(linea -> {
+                try {
+                    return mapper.readTree(linea).get("imagenId").asLong();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            })
+            .sorted()
+            .toList();
+        assertEquals(esperados, ids);
+    }
+
+    @Test
+    @DisplayName("Descargar una imagen subida devuelve exactamente los mismos bytes")
+	void saveImage_downloadImage_returnSameBytes() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new FileSystemResource("./src/test/resources/no_healthy.png"));
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        Long id = client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().map(Imagen::getId).max(Long::compare).orElseThrow();
+
+        byte[] descargada = client.get().uri("/imagen/" + id)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertArrayEquals(Files.readAllBytes(Path.of("./src/test/resources/no_healthy.png")), descargada);
+    }
+
+    @Test
+    @DisplayName("Descargar una imagen que no existe devuelve 404")
+	void downloadUnknownImage_returnNotFound() {
+        client.get().uri("/imagen/999999")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    // Contenido que si se comprime bien (a diferencia de los PNG de prueba), subido con el nombre y tipo indicados
+    private Long subirComprimible(byte[] datos, String nombre, String tipo) {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new ByteArrayResource(datos) {
+            @Override
+            public String getFilename() {
+                return nombre;
+            }
+        }).contentType(MediaType.valueOf(tipo));
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        return client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().map(Imagen::getId).max(Long::compare).orElseThrow();
+    }
+
+    private static byte[] datosComprimibles(int tamano) {
+        byte[] datos = new byte[tamano];
+        for (int i = 0; i < tamano; i++) {
+            datos[i] = (byte) ((i / 64) % 16);
+        }
+        return datos;
+    }
+
+    @Test
+    @DisplayName("Con Accept-Encoding deflate la imagen se envia comprimida tal cual esta guardada")
+	void saveImage_downloadImageAcceptingDeflate_returnDeflateEncodedBytes() throws Exception {
+        byte[] datos = datosComprimibles(64 * 1024);
+        Long id = subirComprimible(datos, "escaneo.bmp", "image/bmp");
+
+        // cliente HTTP del JDK: no toca Accept-Encoding ni descomprime la respuesta por su cuenta
+        HttpResponse<byte[]> respuesta = HttpClient.newHttpClient().send(
+            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/imagen/" + id))
+                .header("Accept-Encoding", "deflate").build(),
+            HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, respuesta.statusCode());
+        assertEquals("deflate", respuesta.headers().firstValue("Content-Encoding").orElse(null));
+        assertTrue(respuesta.body().length < datos.length);
+        byte[] descargada = new InflaterInputStream(new ByteArrayInputStream(respuesta.body())).readAllBytes();
+        assertArrayEquals(datos, descargada);
+    }
+
+    @Test
+    @DisplayName("Una imagen guardada con zstd se descarga con los mismos bytes")
+	void saveImageWithZstd_downloadImage_returnSameBytes() {
+        byte[] datos = datosComprimibles(48 * 1024);
+        Long id = subirComprimible(datos, "escaneo.png", "image/png");
+
+        byte[] descargada = client.get().uri("/imagen/" + id)
+            .header("Accept-Encoding", "deflate")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().doesNotExist("Content-Encoding")
+            .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertArrayEquals(datos, descargada);
+    }
+
+    @Test
+    @DisplayName("Subir una imagen mayor que imagen.subida.tamano-maximo devuelve 413")
+	void saveImageTooLarge_returnPayloadTooLarge() {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new ByteArrayResource(datosComprimibles(700 * 1024)) {
+            @Override
+            public String getFilename() {
+                return "grande.bmp";
+            }
+        }).contentType(MediaType.valueOf("image/bmp"));
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().isEqualTo(413);
+    }
+
+    @Test
+    @DisplayName("Dos imagenes con los mismos bytes comparten el contenido, que se borra con la ultima")
+	void saveSameImageTwice_deleteBoth_contentRemovedWithLast() throws Exception {
+        byte[] datos = datosComprimibles(40 * 1024);
+        Long primera = subirComprimible(datos, "repetida.bmp", "image/bmp");
+        Long segunda = subirComprimible(datos, "repetida.bmp", "image/bmp");
+
+        List<ImagenInfo> imagenes = client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(ImagenInfo.class).returnResult().getResponseBody();
+        String hash = imagenes.stream().filter(i -> i.id() == primera).findFirst().orElseThrow().hash();
+        assertEquals(hash, imagenes.stream().filter(i -> i.id() == segunda).findFirst().orElseThrow().hash());
+        Path contenido = Path.of("target/imagenes-test", hash.substring(0, 2), hash.substring(2, 4), hash);
+        assertTrue(Files.exists(contenido));
+
+        client.delete().uri("/imagen/" + primera)
+            .exchange()
+            .expectStatus().isNoContent();
+        assertTrue(Files.exists(contenido));
+        byte[] descargada = client.get().uri("/imagen/" + segunda)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(datos, descargada);
+
+        client.delete().uri("/imagen/" + segunda)
+            .exchange()
+            .expectStatus().isNoContent();
+        assertFalse(Files.exists(contenido));
+    }
+
+    @Test
+    @DisplayName("Si la subida falla (paciente inexistente) no queda su contenido en el almacen")
+	void saveImageForUnknownPaciente_returnError_contentNotKept() {
+        byte[] datos = new byte[32 * 1024];
+        new Random().nextBytes(datos);
+        String hash = ImageUtils.hashImage(datos);
+        Paciente inexistente = new Paciente();
+        inexistente.setId(99999);
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new ByteArrayResource(datos) {
+            @Override
+            public String getFilename() {
+                return "huerfana.bmp";
+            }
+        }).contentType(MediaType.valueOf("image/bmp"));
+        builder.part("paciente", inexistente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is5xxServerError();
+
+        assertFalse(Files.exists(Path.of("target/imagenes-test", hash.substring(0, 2), hash.substring(2, 4), hash)));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from blob_referencias where hash = ?", Integer.class, hash));
+    }
+
+    @Test
+    @DisplayName("recolectar borra el contenido del almacen que no es de ninguna imagen, y deja el que si")
+	void storeContentWithoutImage_recolectar_deletesOnlyThatContent() throws Exception {
+        BufferedImage gris = new BufferedImage(40, 40, BufferedImage.TYPE_3BYTE_BGR);
+        gris.setRGB(0, 0, (int) (System.nanoTime() & 0xFFFFFF));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(gris, "png", png);
+        byte[] datos = png.toByteArray();
+        Long id = subirComprimible(datos, "viva.png", "image/png");
+        String viva = ImageUtils.hashImage(datos);
+        Path contenidoVivo = Path.of("target/imagenes-test", viva.substring(0, 2), viva.substring(2, 4), viva);
+        // la miniatura de una imagen existente tampoco es basura
+        client.get().uri("/imagen/" + id + "/thumbnail?w=64").exchange();
+
+        String huerfana = ImageUtils.hashImage("contenido sin imagen".getBytes(StandardCharsets.UTF_8));
+        Path contenidoHuerfano = Path.of("target/imagenes-test", huerfana.substring(0, 2), huerfana.substring(2, 4), huerfana);
+        Files.createDirectories(contenidoHuerfano.getParent());
+        Files.write(contenidoHuerfano, new byte[] {1, 2, 3});
+        FileTime antigua = FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(1).toMillis());
+        Files.setLastModifiedTime(contenidoHuerfano, antigua);
+        Files.setLastModifiedTime(contenidoVivo, antigua);
+
+        referenciasBlob.recolectar();
+
+        assertFalse(Files.exists(contenidoHuerfano));
+        assertTrue(Files.exists(contenidoVivo));
+        client.get().uri("/imagen/" + id + "/thumbnail?w=64")
+            .exchange()
+            .expectStatus().isOk();
+        byte[] descargada = client.get().uri("/imagen/" + id)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(datos, descargada);
+    }
+
+    @Test
+    @DisplayName("La miniatura de una imagen es un PNG con el ancho admitido mas cercano por arriba")
+	void saveImage_getThumbnail_returnScaledPng() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new FileSystemResource("./src/test/resources/healthy.png"));
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        Long id = client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().map(Imagen::getId).max(Long::compare).orElseThrow();
+
+        byte[] miniatura = client.get().uri("/imagen/" + id + "/thumbnail?w=20")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.IMAGE_PNG)
+            .expectBody(byte[].class).returnResult().getResponseBody();
+
+        assertEquals(32, ImageIO.read(new ByteArrayInputStream(miniatura)).getWidth());
+
+        // la segunda vez sale de la cache, con los mismos bytes
+        byte[] repetida = client.get().uri("/imagen/" + id + "/thumbnail?w=32")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(miniatura, repetida);
+    }
+
+    @Test
+    @DisplayName("La vista previa de un contenido que no es una imagen devuelve 415")
+	void saveNonImage_getPreview_returnUnsupportedMediaType() {
+        Long id = subirComprimible(datosComprimibles(8 * 1024), "no-imagen.bmp", "image/bmp");
+
+        client.get().uri("/imagen/" + id + "/preview")
+            .exchange()
+            .expectStatus().isEqualTo(415);
+    }
+
+    @Test
+    @DisplayName("La descarga lleva ETag, Last-Modified y el tipo real; con If-None-Match devuelve 304 sin cuerpo")
+	void saveImage_downloadWithIfNoneMatch_returnNotModified() {
+        byte[] datos = datosComprimibles(24 * 1024);
+        Long id = subirComprimible(datos, "escaneo.bmp", "image/bmp");
+
+        FluxExchangeResult<byte[]> primera = client.get().uri("/imagen/" + id)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType("image/bmp")
+            .expectHeader().exists("Last-Modified")
+            .expectHeader().valueMatches("Cache-Control", ".*immutable.*")
+            .returnResult(byte[].class);
+        String etag = primera.getResponseHeaders().getETag();
+        assertEquals("\"" + ImageUtils.hashImage(datos) + "\"", etag);
+
+        client.get().uri("/imagen/" + id)
+            .header("If-None-Match", etag)
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals("ETag", etag)
+            .expectBody().isEmpty();
+
+        client.get().uri("/imagen/" + id)
+            .header("If-None-Match", "\"otro\"")
+            .exchange()
+            .expectStatus().isOk();
+    }
+
+    @Test
+    @DisplayName("Con Range se devuelve 206 con el trozo pedido, tambien cruzando bloques de una imagen comprimida por bloques")
+	void saveLargeImage_downloadRange_returnPartialContent() {
+        byte[] datos = datosComprimibles(200 * 1024);
+        Long id = subirComprimible(datos, "grande.bmp", "image/bmp");
+
+        byte[] trozo = client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=65000-70000")
+            .exchange()
+            .expectStatus().isEqualTo(206)
+            .expectHeader().valueEquals("Content-Range", "bytes 65000-70000/" + datos.length)
+            .expectHeader().contentLength(70001 - 65000)
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(Arrays.copyOfRange(datos, 65000, 70001), trozo);
+
+        byte[] cola = client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=-100")
+            .exchange()
+            .expectStatus().isEqualTo(206)
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(Arrays.copyOfRange(datos, datos.length - 100, datos.length), cola);
+
+        client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=" + datos.length + "-")
+            .exchange()
+            .expectStatus().isEqualTo(416)
+            .expectHeader().valueEquals("Content-Range", "bytes */" + datos.length);
+
+        // If-Range con otra ETag: se envia la imagen entera
+        client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=0-9")
+            .header("If-Range", "\"otra\"")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals("Accept-Ranges", "bytes")
+            .expectHeader().contentLength(datos.length);
+    }
+
+    @Test
+    @DisplayName("Con varios rangos se devuelve multipart/byteranges con una parte por rango")
+	void saveLargeImage_downloadMultipleRanges_returnByteranges() {
+        byte[] datos = datosComprimibles(136 * 1024);
+        Long id = subirComprimible(datos, "multiple.bmp", "image/bmp");
+
+        FluxExchangeResult<byte[]> respuesta = client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=0-9,100000-100099")
+            .exchange()
+            .expectStatus().isEqualTo(206)
+            .returnResult(byte[].class);
+        assertTrue(respuesta.getResponseHeaders().getContentType().toString().startsWith("multipart/byteranges"));
+        String cuerpo = new String(respuesta.getResponseBodyContent(), StandardCharsets.ISO_8859_1);
+        assertEquals(new String(Arrays.copyOfRange(datos, 0, 10), StandardCharsets.ISO_8859_1),
+            parte(cuerpo, "bytes 0-9/" + datos.length, 10));
+        assertEquals(new String(Arrays.copyOfRange(datos, 100000, 100100), StandardCharsets.ISO_8859_1),
+            parte(cuerpo, "bytes 100000-100099/" + datos.length, 100));
+    }
+
+    @Test
+    @DisplayName("Con Range sobre una imagen guardada sin comprimir se devuelve el trozo de los bytes originales")
+	void savePng_downloadRange_returnPartialContent() throws Exception {
+        byte[] datos = Files.readAllBytes(Path.of("./src/test/resources/healthy.png"));
+        Long id = subirComprimible(datos, "rango.png", "image/png");
+
+        byte[] trozo = client.get().uri("/imagen/" + id)
+            .header("Range", "bytes=8-1023")
+            .exchange()
+            .expectStatus().isEqualTo(206)
+            .expectHeader().valueEquals("Content-Range", "bytes 8-1023/" + datos.length)
+            .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(Arrays.copyOfRange(datos, 8, 1024), trozo);
+    }
+
+    // Contenido de la parte de un multipart/byteranges con el Content-Range indicado
+    private static String parte(String cuerpo, String rango, int longitud) {
+        int inicio = cuerpo.indexOf("Content-Range: " + rango + "\r\n\r\n");
+        assertTrue(inicio >= 0, "Falta la parte " + rango);
+        inicio = cuerpo.indexOf("\r\n\r\n", inicio) + 4;
+        return cuerpo.substring(inicio, inicio + longitud);
+    }
 }
@@ -19,6 +19,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Comparator;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -28,10 +29,14 @@ import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uma.example.springuma.integration.base.ServidorPrediccionLocal;
 import com.uma.example.springuma.model.Imagen;
 import com.uma.example.springuma.model.Informe;
 import com.uma.example.springuma.model.Medico;
@@ -50,6 +55,11 @@ public class InformeControllerWebTestClientIT {
     private Imagen imagen;
     private Informe informe;
 
+    @DynamicPropertySource
+    static void predictor(DynamicPropertyRegistry registry) {
+        ServidorPrediccionLocal.conectar(registry);
+    }
+
     @PostConstruct
     public void init(){
         client = WebTestClient.bindToServer().baseUrl("http://localhost:"+port)
@@ -193,6 +203,83 @@ public class InformeControllerWebTestClientIT {
         
     }
 
-    
-    
+
+    @Test
+    @DisplayName("La prediccion de un informe se guarda con sus puntuaciones y se puede consultar")
+    public void createInformePost_predictionFinishes_returnStructuredPrediction() throws Exception {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post()
+            .uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new FileSystemResource("./src/test/resources/no_healthy.png"));
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        // los tests comparten contexto: la imagen recien subida es la de mayor id del paciente
+        Imagen imagen = client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().max(Comparator.comparingLong(Imagen::getId)).orElseThrow();
+
+        informe.setImagen(imagen);
+        client.post().uri("/informe")
+            .body(Mono.just(informe), Informe.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        // la prediccion la rellena un job: se espera a que deje de estar pendiente
+        JsonNode guardado = null;
+        for (int i = 0; i < 100; i++) {
+            guardado = client.get().uri("/informe/imagen/" + imagen.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JsonNode.class).returnResult().getResponseBody().get(0);
+            if (!"Pendiente".equals(guardado.get("prediccion").asText())) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        JsonNode resultado = guardado.get("resultado");
+        assertTrue(guardado.get("prediccion").asText().contains("Cancer (label 1)"));
+        assertEquals("LABEL_1", resultado.get("etiqueta").asText());
+        assertTrue(resultado.get("puntuacionCancer").asDouble() > resultado.get("puntuacionSinCancer").asDouble());
+        assertEquals(guardado.get("prediccion").asText(), resultado.get("texto").asText());
+        assertEquals(imagen.getId(), resultado.get("imagenId").asLong());
+
+        JsonNode predicciones = client.get().uri("/prediccion/imagen/" + imagen.getId())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(JsonNode.class).returnResult().getResponseBody();
+        assertEquals(1, predicciones.size());
+        assertEquals(resultado.get("id").asLong(), predicciones.get(0).get("id").asLong());
+
+        JsonNode resumen = client.get().uri("/prediccion/resumen")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(JsonNode.class).returnResult().getResponseBody();
+        // los informes de otros tests tambien cuentan (sus imagenes son sanas, LABEL_0)
+        JsonNode cancer = null;
+        for (JsonNode etiqueta : resumen) {
+            if ("LABEL_1".equals(etiqueta.get("etiqueta").asText())) {
+                cancer = etiqueta;
+            }
+        }
+        assertEquals(1, cancer.get("total").asLong());
+        assertEquals(resultado.get("puntuacionCancer").asDouble(), cancer.get("puntuacionCancerMedia").asDouble(), 1e-9);
+    }
 }
@@ -5,12 +5,14 @@
 */
 package com.uma.example.springuma.integration;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -210,4 +212,36 @@ class PacienteControllerWebTestClientIT {
             .exchange()
             .expectStatus().is5xxServerError();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Damos de alta varios pacientes a la vez y aparecen todos en la lista de pacientes del médico")
+    public void createPacientsBatchPost_asociatedWithMedicoGet_returnAllThePacients(){
+        // crea un medico
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated()
+            .expectBody().returnResult();
+
+        // crea tres pacientes en una sola peticion
+        List<Paciente> pacientes = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Paciente nuevo = new Paciente();
+            nuevo.setDni("1111111" + i + "L");
+            nuevo.setNombre("PacienteLote" + i);
+            nuevo.setMedico(medico);
+            pacientes.add(nuevo);
+        }
+        client.post().uri("/paciente/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(pacientes)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.get().uri("/paciente/medico/1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody().jsonPath("$[*].dni").value(hasItems("11111111L", "11111112L", "11111113L"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.uma.example.springuma.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.uma.example.springuma.integration.base.ServidorPrediccionLocal;
+import com.uma.example.springuma.model.Medico;
+import com.uma.example.springuma.model.Paciente;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PrediccionJobControllerWebTestClientIT {
+
+    @LocalServerPort
+    private Integer port;
+    private WebTestClient client;
+    private Medico medico;
+    private Paciente paciente;
+
+    @DynamicPropertySource
+    static void predictor(DynamicPropertyRegistry registry) {
+        ServidorPrediccionLocal.conectar(registry);
+    }
+
+    @PostConstruct
+    public void init(){
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:"+port)
+        .responseTimeout(Duration.ofMillis(30000)).build();
+
+        medico = new Medico();
+        medico.setId(1);
+        medico.setNombre("Clemente");
+        medico.setDni("12345678A");
+        medico.setEspecialidad("Traumatología");
+
+        paciente = new Paciente();
+        paciente.setId(1);
+        paciente.setDni("12345678A");
+        paciente.setNombre("Paciente1");
+        paciente.setMedico(medico);
+    }
+
+    @Test
+    @DisplayName("Encolar una prediccion devuelve 202 y el job termina al consultarlo con espera")
+    void submitPredictionJob_pollWithWait_returnsFinishedJob() {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        client.post().uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange()
+            .expectStatus().isCreated();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new FileSystemResource("./src/test/resources/healthy.png"));
+        builder.part("paciente", paciente);
+
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        // el envio no espera al modelo: 202 con el id del job
+        FluxExchangeResult<JsonNode> submitted = client.post().uri("/prediction-jobs/imagen/1")
+            .exchange()
+            .expectStatus().isAccepted()
+            .returnResult(JsonNode.class);
+
+        JsonNode job = submitted.getResponseBody().blockFirst();
+        assertNotNull(job.get("id"));
+        assertEquals("/prediction-jobs/" + job.get("id").asText(), submitted.getResponseHeaders().getLocation().toString());
+
+        // long-poll hasta que el job termine
+        JsonNode terminado = client.get().uri("/prediction-jobs/" + job.get("id").asText() + "?espera=20000")
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(JsonNode.class)
+            .getResponseBody().blockFirst();
+
+        assertEquals("COMPLETADO", terminado.get("estado").asText());
+    }
+
+    @Test
+    @DisplayName("Consultar un job que no existe devuelve 404")
+    void getUnknownJob_returnsNotFound() {
+        client.get().uri("/prediction-jobs/no-existe")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,168 @@
+package com.uma.example.springuma.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import com.uma.example.springuma.model.Imagen;
+import com.uma.example.springuma.model.Medico;
+import com.uma.example.springuma.model.Paciente;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+// Prediccion con el modelo ejecutado dentro de la JVM. El modelo de prueba solo mira el brillo medio:
+// healthy.png es clara y no_healthy.png bastante mas oscura
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "predictor.tipo=local",
+    "predictor.local.modelo=classpath:modelo-prueba.json",
+    "predictor.local.sesiones=2",
+    "predictor.agrupacion.espera-ms=200"
+})
+class PredictorLocalWebTestClientIT {
+
+    @LocalServerPort
+    private Integer port;
+    private WebTestClient client;
+    private Medico medico;
+    private Paciente paciente;
+
+    @PostConstruct
+    public void init(){
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:"+port)
+        .responseTimeout(Duration.ofMillis(30000)).build();
+
+        medico = new Medico();
+        medico.setId(1);
+        medico.setNombre("Clemente");
+        medico.setDni("12345678A");
+        medico.setEspecialidad("Traumatología");
+
+        paciente = new Paciente();
+        paciente.setId(1);
+        paciente.setDni("12345678A");
+        paciente.setNombre("Paciente1");
+        paciente.setMedico(medico);
+    }
+
+    @Test
+    @DisplayName("El modelo local predice que la imagen sana no tiene cancer")
+    void localModel_healthyImage_returnNoCancer() {
+        String result = predecir("healthy.png");
+        assertTrue(result.contains("Not cancer (label 0)"));
+    }
+
+    @Test
+    @DisplayName("El modelo local predice que la imagen enferma tiene cancer")
+    void localModel_notHealthyImage_returnCancer() {
+        String result = predecir("no_healthy.png");
+        assertTrue(result.contains("Cancer (label 1)"));
+    }
+
+    @Test
+    @DisplayName("Las predicciones simultaneas van al modelo local en lotes")
+    void localModel_concurrentPredictions_areBatched() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            // imagenes distintas para que ninguna salga de la cache
+            BufferedImage imagen = new BufferedImage(30, 30, BufferedImage.TYPE_3BYTE_BGR);
+            imagen.setRGB(0, 0, 0x101010 * (i + 1));
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(imagen, "png", png);
+            ids.add(subir(new ByteArrayResource(png.toByteArray()) {
+                @Override
+                public String getFilename() {
+                    return "oscura.png";
+                }
+            }));
+        }
+
+        Map<?, ?> antes = client.get().uri("/prediccion/agrupacion").exchange()
+            .expectStatus().isOk().expectBody(Map.class).returnResult().getResponseBody();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(ids.size());
+        try {
+            List<Future<String>> predicciones = new ArrayList<>();
+            for (Long id : ids) {
+                predicciones.add(hilos.submit(() -> client.get().uri("/imagen/predict/" + id)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .returnResult(String.class)
+                    .getResponseBody().blockFirst()));
+            }
+            for (Future<String> prediccion : predicciones) {
+                assertTrue(prediccion.get().contains("Cancer (label 1)"));
+            }
+        } finally {
+            hilos.shutdown();
+        }
+
+        Map<?, ?> despues = client.get().uri("/prediccion/agrupacion").exchange()
+            .expectStatus().isOk().expectBody(Map.class).returnResult().getResponseBody();
+        long lotes = ((Number) despues.get("lotes")).longValue() - ((Number) antes.get("lotes")).longValue();
+        long imagenes = ((Number) despues.get("imagenes")).longValue() - ((Number) antes.get("imagenes")).longValue();
+        assertEquals(4, imagenes);
+        assertTrue(lotes < imagenes);
+    }
+
+    private String predecir(String fichero) {
+        long id = subir(new FileSystemResource("./src/test/resources/" + fichero));
+
+        return client.get()
+            .uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(String.class)
+            .getResponseBody().blockFirst();
+    }
+
+    // Sube la imagen al paciente 1 y devuelve su id
+    private long subir(Resource recurso) {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange();
+
+        client.post().uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange();
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", recurso);
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        return client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().mapToLong(Imagen::getId).max().orElseThrow();
+    }
+}
@@ -0,0 +1,161 @@
+package com.uma.example.springuma.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.uma.example.springuma.model.RepositoryImagen;
+import com.uma.example.springuma.model.RepositoryInforme;
+import com.uma.example.springuma.model.RepositoryMedico;
+import com.uma.example.springuma.model.RepositoryPaciente;
+
+// Comprueba con EXPLAIN que las consultas de los repositorios por clave ajena y por dni van por indice.
+// Hibernate pasa cada SQL por Sentencias, asi se explica exactamente la consulta que genera cada metodo.
+// Cada test llena las tablas con unos miles de filas (se deshacen al terminar): con las tablas vacias a
+// H2 le da igual un indice que otro y el plan no dice nada
+@SpringBootTest
+@Transactional
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "com.uma.example.springuma.integration.RepositoryQueryPlanIT$Sentencias")
+class RepositoryQueryPlanIT {
+
+    public static class Sentencias implements StatementInspector {
+
+        static final List<String> capturadas = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (capturadas) {
+                capturadas.add(sql);
+            }
+            return sql;
+        }
+    }
+
+    // Restricciones de V1 (con los nombres que les daba Hibernate); H2 crea un indice para cada una,
+    // "<restriccion>_INDEX_<n>", con <n> un contador en hexadecimal que depende de cuantos objetos se hayan
+    // creado antes (lo mismo sale _INDEX_8 que _INDEX_A). Sus entradas van en orden de clave primaria: el de
+    // una clave ajena sirve para "clave = ? order by id", pero no para seguir a partir de un id o por fecha
+    private static final String INDICE_AUTOMATICO = "_INDEX_[0-9A-F]+";
+    private static final String FK_PACIENTE_MEDICO = "FKDB6GGRAU4KXV0XCU8N17BMN9U";
+    private static final String FK_IMAGEN_PACIENTE = "FKIMRYCMHLRXO3MCT9129VHSLET";
+    private static final String FK_INFORME_IMAGEN = "FK6EIIJURDYXKY4959WF40P9KIV";
+    private static final String UK_MEDICO_DNI = "UK_BXIKGOXGF4C1147WAT5JTH878";
+    private static final String UK_PACIENTE_DNI = "UK_WR6KXHPAYD3JDLUDSYTBN8AG";
+
+    @Autowired
+    private RepositoryMedico repositoryMedico;
+
+    @Autowired
+    private RepositoryPaciente repositoryPaciente;
+
+    @Autowired
+    private RepositoryImagen repositoryImagen;
+
+    @Autowired
+    private RepositoryInforme repositoryInforme;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void poblar() {
+        jdbcTemplate.update("insert into medico (id, dni, nombre) select x, 'M' || x, 'Medico' || x"
+            + " from system_range(1000001, 1000020)");
+        jdbcTemplate.update("insert into paciente (id, dni, nombre, edad, medico_id) select x, 'P' || x, 'Paciente' || x, mod(x, 90),"
+            + " 1000001 + mod(x, 20) from system_range(1000001, 1002000)");
+        jdbcTemplate.update("insert into imagen (id, nombre, fecha, paciente_id) select x, 'imagen' || x,"
+            + " dateadd(minute, x, timestamp '2024-01-01 00:00:00'), 1000001 + mod(x, 2000) from system_range(1000001, 1010000)");
+        jdbcTemplate.update("insert into informe (id, contenido, imagen_id) select x, 'informe' || x,"
+            + " 1000001 + mod(x, 10000) from system_range(1000001, 1010000)");
+    }
+
+    private void limpiar() {
+        synchronized (Sentencias.capturadas) {
+            Sentencias.capturadas.clear();
+        }
+    }
+
+    // La consulta del metodo (la primera que lanza la llamada; las siguientes cargan las asociaciones), y su plan
+    private String plan(Runnable llamada) {
+        limpiar();
+        llamada.run();
+        List<String> sql;
+        synchronized (Sentencias.capturadas) {
+            sql = new ArrayList<>(Sentencias.capturadas);
+        }
+        assertFalse(sql.isEmpty(), "La llamada no ha lanzado ninguna consulta");
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql.get(0), String.class);
+    }
+
+    // H2 anota cada tabla con el indice que usa y la condicion con la que lo recorre:
+    // "/* PUBLIC.IDX_PACIENTE_MEDICO: MEDICO_ID = ?1 AND ID > ?2 */". Sin condicion (o tableScan) recorre
+    // la tabla entera. 'condicion' es una expresion regular; los saltos de linea del plan cuentan como espacios
+    private static void assertIndice(String indice, String condicion, String plan) {
+        Pattern busqueda = Pattern.compile("/\\* PUBLIC\\." + indice + ": " + condicion + "\\s*\\*/");
+        assertTrue(busqueda.matcher(plan.replaceAll("\\s+", " ")).find(),
+            "Se esperaba el indice " + indice + " con " + condicion + " en " + plan);
+    }
+
+    @Test
+    @DisplayName("Los pacientes de un medico se buscan por indice de medico_id, y las paginas siguientes por (medico_id, id)")
+    void findPacientesByMedico_usesMedicoIndex() {
+        assertIndice("(IDX_PACIENTE_MEDICO|" + FK_PACIENTE_MEDICO + INDICE_AUTOMATICO + ")", "MEDICO_ID = \\?1",
+            plan(() -> repositoryPaciente.findByMedicoIdOrderByIdAsc(1000001L, PageRequest.of(0, 10))));
+        assertIndice("IDX_PACIENTE_MEDICO", "MEDICO_ID = \\?1 AND ID > \\?2",
+            plan(() -> repositoryPaciente.findByMedicoIdAndIdGreaterThanOrderByIdAsc(1000001L, 1000500L, PageRequest.of(0, 10))));
+    }
+
+    @Test
+    @DisplayName("Las imagenes de un paciente se buscan por indice de paciente_id, y por pagina con (paciente_id, id) o (paciente_id, fecha, id)")
+    void findImagenesByPaciente_usesPacienteIndex() {
+        String porPaciente = "(IDX_IMAGEN_PACIENTE|IDX_IMAGEN_PACIENTE_FECHA|" + FK_IMAGEN_PACIENTE + INDICE_AUTOMATICO + ")";
+        assertIndice(porPaciente, "PACIENTE_ID = \\?1",
+            plan(() -> repositoryImagen.getByPacienteId(1000001L)));
+        assertIndice(porPaciente, "PACIENTE_ID = \\?1",
+            plan(() -> repositoryImagen.findIdsByPacienteId(1000001L)));
+        assertIndice("IDX_IMAGEN_PACIENTE", "PACIENTE_ID = \\?1 AND ID > \\?2",
+            plan(() -> repositoryImagen.findInfoByPacienteId(1000001L, 1000500L, PageRequest.of(0, 10))));
+        // por fecha H2 no tiene en cuenta lo que cuesta ordenar, y el OR del cursor no le sirve para acotar el
+        // recorrido: elige cualquiera de los de paciente_id. Del de (paciente_id, fecha, id) se comprueban las columnas
+        assertIndice(porPaciente, "PACIENTE_ID = \\?1",
+            plan(() -> repositoryImagen.findInfoByPacienteIdPorFecha(1000001L, PageRequest.of(0, 10))));
+        assertIndice(porPaciente, "PACIENTE_ID = \\?1",
+            plan(() -> repositoryImagen.findInfoByPacienteIdPorFecha(1000001L, Calendar.getInstance(), 1000500L, PageRequest.of(0, 10))));
+        assertEquals(List.of("PACIENTE_ID", "FECHA", "ID"), jdbcTemplate.queryForList("select column_name"
+            + " from information_schema.index_columns where index_name = 'IDX_IMAGEN_PACIENTE_FECHA' order by ordinal_position",
+            String.class));
+    }
+
+    @Test
+    @DisplayName("Los informes de una imagen se buscan por indice de imagen_id, y las paginas siguientes por (imagen_id, id)")
+    void findInformesByImagen_usesImagenIndex() {
+        assertIndice("(IDX_INFORME_IMAGEN|" + FK_INFORME_IMAGEN + INDICE_AUTOMATICO + ")", "IMAGEN_ID = \\?1",
+            plan(() -> repositoryInforme.findByImagenIdOrderByIdAsc(1000001L, PageRequest.of(0, 10))));
+        assertIndice("IDX_INFORME_IMAGEN", "IMAGEN_ID = \\?1 AND ID > \\?2",
+            plan(() -> repositoryInforme.findByImagenIdAndIdGreaterThanOrderByIdAsc(1000001L, 1000500L, PageRequest.of(0, 10))));
+    }
+
+    @Test
+    @DisplayName("Medicos y pacientes se buscan por dni con su indice unico")
+    void findByDni_usesUniqueIndex() {
+        assertIndice(UK_MEDICO_DNI + INDICE_AUTOMATICO, "DNI = \\?1", plan(() -> repositoryMedico.getMedicoByDni("M1000001")));
+        assertIndice(UK_PACIENTE_DNI + INDICE_AUTOMATICO, "DNI = \\?1", plan(() -> repositoryPaciente.findByDni("P1000001")));
+    }
+}
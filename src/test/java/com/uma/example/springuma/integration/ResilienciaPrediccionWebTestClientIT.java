@@ -0,0 +1,262 @@
+package com.uma.example.springuma.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import com.uma.example.springuma.model.Imagen;
+import com.uma.example.springuma.model.Medico;
+import com.uma.example.springuma.model.Paciente;
+import com.uma.example.springuma.model.PrediccionException;
+import com.uma.example.springuma.model.Predictor;
+import com.uma.example.springuma.model.ResilienciaPredictor;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+// Codigo HTTP de /imagen/predict segun como falle el modelo, con un Predictor simulado en lugar del remoto.
+// Sin reintentos, para que cada prediccion sea una llamada al predictor
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "predictor.tipo=simulado",
+    "predictor.reintentos.maximo=0",
+    "predictor.circuito.fallos=3",
+    "predictor.circuito.abierto-ms=60000",
+    "predictor.bulkhead.max-concurrentes=1",
+    "predictor.bulkhead.espera-ms=200"
+})
+class ResilienciaPrediccionWebTestClientIT {
+
+    // Responde, falla o se queda bloqueado segun lo que le prepare cada test
+    static class PredictorSimulado implements Predictor {
+
+        final AtomicInteger llamadas = new AtomicInteger();
+        volatile Exception fallo;
+        volatile long retrasoMs;
+        volatile CountDownLatch bloqueo;
+        volatile CountDownLatch dentro = new CountDownLatch(1);
+
+        @Override
+        public Map<String, Double> predecir(byte[] imagen) throws PrediccionException {
+            llamadas.incrementAndGet();
+            dentro.countDown();
+            try {
+                CountDownLatch esperar = bloqueo;
+                if (esperar != null) {
+                    esperar.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(retrasoMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fallo instanceof PrediccionException prediccion) {
+                throw prediccion;
+            }
+            if (fallo instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            return Map.of("LABEL_0", 0.9, "LABEL_1", 0.1);
+        }
+
+        @Override
+        public String getModelo() {
+            return "simulado";
+        }
+    }
+
+    @TestConfiguration
+    static class Configuracion {
+
+        @Bean
+        PredictorSimulado predictor() {
+            return new PredictorSimulado();
+        }
+    }
+
+    @LocalServerPort
+    private Integer port;
+    private WebTestClient client;
+    private Medico medico;
+    private Paciente paciente;
+
+    @Autowired
+    private PredictorSimulado predictor;
+
+    @Autowired
+    private ResilienciaPredictor resilienciaPredictor;
+
+    @PostConstruct
+    public void init(){
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:"+port)
+        .responseTimeout(Duration.ofMillis(30000)).build();
+
+        medico = new Medico();
+        medico.setId(1);
+        medico.setNombre("Clemente");
+        medico.setDni("12345678A");
+        medico.setEspecialidad("Traumatología");
+
+        paciente = new Paciente();
+        paciente.setId(1);
+        paciente.setDni("12345678A");
+        paciente.setNombre("Paciente1");
+        paciente.setMedico(medico);
+    }
+
+    // Un exito pone a cero los fallos seguidos que hayan dejado otros tests
+    @BeforeEach
+    void reiniciar() throws PrediccionException {
+        predictor.fallo = null;
+        predictor.retrasoMs = 0;
+        predictor.bloqueo = null;
+        predictor.dentro = new CountDownLatch(1);
+        resilienciaPredictor.ejecutar(() -> null);
+    }
+
+    @Test
+    @DisplayName("Si el modelo no responde a tiempo la prediccion devuelve 504")
+    void predictModelTimesOut_returnGatewayTimeout() throws IOException {
+        long id = subirImagen();
+        // como el backend remoto al agotar predictor.timeout-ms
+        predictor.retrasoMs = 300;
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.TIMEOUT, "El servicio de prediccion no ha respondido en 300 ms");
+
+        client.get().uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isEqualTo(504)
+            .expectHeader().doesNotExist(HttpHeaders.RETRY_AFTER);
+    }
+
+    @Test
+    @DisplayName("Si el servicio de prediccion responde con error o el predictor falla la prediccion devuelve 502")
+    void predictUpstreamError_returnBadGateway() throws IOException {
+        long id = subirImagen();
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.ERROR_REMOTO, "HTTP 500");
+        client.get().uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isEqualTo(502);
+
+        predictor.fallo = new IllegalStateException("respuesta que no se entiende");
+        client.get().uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isEqualTo(502);
+    }
+
+    @Test
+    @DisplayName("Una imagen que el modelo no puede leer devuelve 422")
+    void predictInvalidImage_returnUnprocessableEntity() throws IOException {
+        long id = subirImagen();
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.IMAGEN_NO_VALIDA, "no es una imagen");
+
+        client.get().uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isEqualTo(422);
+    }
+
+    @Test
+    @DisplayName("Con el bulkhead lleno la prediccion devuelve 503 sin llegar al modelo")
+    void predictWhileBulkheadFull_returnServiceUnavailable() throws Exception {
+        long ocupada = subirImagen();
+        long rechazada = subirImagen();
+        int antes = predictor.llamadas.get();
+        predictor.dentro = new CountDownLatch(1);
+        predictor.bloqueo = new CountDownLatch(1);
+        CompletableFuture<Integer> enCurso = CompletableFuture.supplyAsync(() -> client.get().uri("/imagen/predict/" + ocupada)
+            .exchange()
+            .returnResult(String.class).getStatus().value());
+        assertTrue(predictor.dentro.await(10, TimeUnit.SECONDS));
+
+        client.get().uri("/imagen/predict/" + rechazada)
+            .exchange()
+            .expectStatus().isEqualTo(503)
+            .expectHeader().doesNotExist(HttpHeaders.RETRY_AFTER);
+        assertEquals(antes + 1, predictor.llamadas.get());
+
+        predictor.bloqueo.countDown();
+        assertEquals(200, enCurso.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    @DisplayName("Con el circuito abierto la prediccion devuelve 503 con Retry-After sin llamar al modelo")
+    void predictWithCircuitOpen_returnServiceUnavailableWithRetryAfter() throws IOException {
+        long id = subirImagen();
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.ERROR_REMOTO, "HTTP 500");
+        for (int i = 0; i < 3; i++) {
+            client.get().uri("/imagen/predict/" + id)
+                .exchange()
+                .expectStatus().isEqualTo(502);
+        }
+        int llamadas = predictor.llamadas.get();
+
+        String retryAfter = client.get().uri("/imagen/predict/" + id)
+            .exchange()
+            .expectStatus().isEqualTo(503)
+            .returnResult(String.class).getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        long segundos = Long.parseLong(retryAfter);
+        assertTrue(segundos > 0 && segundos <= 60, "Retry-After: " + retryAfter);
+        assertEquals(llamadas, predictor.llamadas.get());
+    }
+
+    // Imagen distinta en cada llamada, para que ninguna prediccion salga de la cache
+    private long subirImagen() throws IOException {
+        client.post().uri("/medico")
+            .body(Mono.just(medico), Medico.class)
+            .exchange();
+
+        client.post().uri("/paciente")
+            .body(Mono.just(paciente), Paciente.class)
+            .exchange();
+
+        BufferedImage imagen = new BufferedImage(20, 20, BufferedImage.TYPE_3BYTE_BGR);
+        imagen.setRGB(0, 0, (int) (System.nanoTime() & 0xFFFFFF));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(imagen, "png", png);
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("image", new ByteArrayResource(png.toByteArray()) {
+            @Override
+            public String getFilename() {
+                return "simulada.png";
+            }
+        });
+        builder.part("paciente", paciente);
+        client.post()
+            .uri("/imagen")
+            .contentType(MediaType.MULTIPART_FORM_DATA)
+            .body(BodyInserters.fromMultipartData(builder.build()))
+            .exchange()
+            .expectStatus().is2xxSuccessful();
+
+        return client.get().uri("/imagen/paciente/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBodyList(Imagen.class).returnResult().getResponseBody()
+            .stream().mapToLong(Imagen::getId).max().orElseThrow();
+    }
+}
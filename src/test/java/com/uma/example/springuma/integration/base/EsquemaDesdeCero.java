@@ -0,0 +1,18 @@
+package com.uma.example.springuma.integration.base;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.stereotype.Component;
+
+// Los tests comparten la base de datos en memoria: cada contexto que arranca la borra y aplica las
+// migraciones desde cero, como hacia antes ddl-auto=create-drop. Al estar en el paquete de la aplicacion
+// lo recoge el escaneo de componentes de todos los @SpringBootTest
+@Component
+public class EsquemaDesdeCero implements FlywayMigrationStrategy {
+
+    @Override
+    public void migrate(Flyway flyway) {
+        flyway.clean();
+        flyway.migrate();
+    }
+}
@@ -0,0 +1,124 @@
+package com.uma.example.springuma.integration.base;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Sustituto local de la API de inferencia para los tests: responde como ella, sin salir a la red. La
+// imagen se clasifica por su brillo medio (no_healthy.png es bastante mas oscura que healthy.png): por
+// debajo de UMBRAL, "LABEL_1" (cancer). Se le pueden encolar respuestas para simular fallos del servicio.
+// Un unico servidor por JVM; cada test lo conecta con conectar(registry) en su @DynamicPropertySource
+public final class ServidorPrediccionLocal {
+
+    private static final double UMBRAL = 205;
+
+    public record Respuesta(int estado, String cuerpo, long retrasoMs) {
+    }
+
+    private static ServidorPrediccionLocal instancia;
+
+    private final HttpServer servidor;
+    private final Queue<Respuesta> guion = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger llamadas = new AtomicInteger();
+
+    private ServidorPrediccionLocal() throws IOException {
+        servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        servidor.createContext("/", this::atender);
+        servidor.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "prediccion-local");
+            t.setDaemon(true);
+            return t;
+        }));
+        servidor.start();
+    }
+
+    public static synchronized ServidorPrediccionLocal get() {
+        if (instancia == null) {
+            try {
+                instancia = new ServidorPrediccionLocal();
+            } catch (IOException e) {
+                throw new IllegalStateException("No se pudo arrancar el servidor de prediccion local", e);
+            }
+        }
+        return instancia;
+    }
+
+    public static void conectar(DynamicPropertyRegistry registry) {
+        registry.add("predictor.remoto.url", () -> get().getUrl());
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + servidor.getAddress().getPort() + "/models/local";
+    }
+
+    // Las siguientes llamadas responden esto, en orden, antes de volver a clasificar
+    public void encolar(Respuesta... respuestas) {
+        for (Respuesta respuesta : respuestas) {
+            guion.add(respuesta);
+        }
+    }
+
+    public int getLlamadas() {
+        return llamadas.get();
+    }
+
+    private void atender(HttpExchange exchange) throws IOException {
+        llamadas.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] imagen = in.readAllBytes();
+            Respuesta respuesta = guion.poll();
+            if (respuesta == null) {
+                respuesta = clasificar(imagen);
+            }
+            if (respuesta.retrasoMs() > 0) {
+                Thread.sleep(respuesta.retrasoMs());
+            }
+            byte[] cuerpo = respuesta.cuerpo().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(respuesta.estado(), cuerpo.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(cuerpo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // el cliente ha abortado la peticion (timeout)
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Respuesta clasificar(byte[] imagen) throws IOException {
+        BufferedImage leida = ImageIO.read(new ByteArrayInputStream(imagen));
+        if (leida == null) {
+            return new Respuesta(400, "{\"error\": \"Could not decode image\"}", 0);
+        }
+        double suma = 0;
+        for (int y = 0; y < leida.getHeight(); y++) {
+            for (int x = 0; x < leida.getWidth(); x++) {
+                int rgb = leida.getRGB(x, y);
+                suma += (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3.0;
+            }
+        }
+        boolean cancer = suma / ((double) leida.getWidth() * leida.getHeight()) < UMBRAL;
+        String primera = cancer ? "LABEL_1" : "LABEL_0";
+        String segunda = cancer ? "LABEL_0" : "LABEL_1";
+        return new Respuesta(200, "[{\"label\": \"" + primera + "\", \"score\": 0.97}, {\"label\": \"" + segunda + "\", \"score\": 0.03}]", 0);
+    }
+}
@@ -0,0 +1,103 @@
+package com.uma.example.springuma.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// PredictorLocal con el modelo de prueba (solo mira el brillo medio) y una unica sesion, de modo que todas
+// las predicciones reutilizan los mismos buffers
+class PredictorLocalTest {
+
+    private static PredictorLocal predictor() throws IOException {
+        return predictor(new ClassPathResource("modelo-prueba.json"));
+    }
+
+    private static PredictorLocal predictor(Resource modelo) throws IOException {
+        PredictorLocal predictor = new PredictorLocal();
+        ReflectionTestUtils.setField(predictor, "recurso", modelo);
+        ReflectionTestUtils.setField(predictor, "numeroSesiones", 1);
+        ReflectionTestUtils.setField(predictor, "esperaMs", 1000L);
+        ReflectionTestUtils.setField(predictor, "calentamiento", 0);
+        predictor.init();
+        return predictor;
+    }
+
+    private static byte[] png(BufferedImage imagen) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(imagen, "png", png);
+        return png.toByteArray();
+    }
+
+    private static byte[] opaca(int rgb) throws IOException {
+        BufferedImage imagen = new BufferedImage(40, 40, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 40; x++) {
+                imagen.setRGB(x, y, rgb);
+            }
+        }
+        return png(imagen);
+    }
+
+    // Mitad izquierda transparente, mitad derecha gris opaca
+    private static byte[] transparente() throws IOException {
+        BufferedImage imagen = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 20; x < 40; x++) {
+                imagen.setRGB(x, y, 0xFF808080);
+            }
+        }
+        return png(imagen);
+    }
+
+    @Test
+    @DisplayName("Una imagen con transparencia puntua igual sea cual sea la imagen anterior de la sesion")
+    void predecirTransparente_trasImagenesDistintas_mismaPuntuacion() throws Exception {
+        PredictorLocal predictor = predictor();
+        byte[] transparente = transparente();
+
+        predictor.predecir(opaca(0xFFFFFF));
+        Map<String, Double> trasBlanca = predictor.predecir(transparente);
+        predictor.predecir(opaca(0x000000));
+        Map<String, Double> trasNegra = predictor.predecir(transparente);
+
+        assertEquals(trasBlanca, trasNegra);
+        // en un mismo lote las imagenes tambien pasan una tras otra por la sesion
+        List<Map<String, Double>> lote = predictor.predecirLote(List.of(opaca(0xFFFFFF), transparente));
+        assertEquals(trasBlanca, lote.get(1));
+    }
+
+    @Test
+    @DisplayName("Un modelo con etiquetas distintas de LABEL_0 y LABEL_1 no se carga")
+    void init_etiquetasDistintas_modeloNoValido() throws Exception {
+        String json;
+        try (InputStream in = new ClassPathResource("modelo-prueba.json").getInputStream()) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        for (String etiquetas : new String[] {"[\"sano\", \"cancer\"]", "[\"LABEL_0\", \"LABEL_0\"]", "[\"LABEL_1\", \"LABEL_2\"]"}) {
+            String otras = json.replace("[\"LABEL_0\", \"LABEL_1\"]", etiquetas);
+            IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> predictor(new ByteArrayResource(otras.getBytes(StandardCharsets.UTF_8))));
+            assertTrue(error.getMessage().contains("etiquetas"), error.getMessage());
+        }
+        // el orden de las etiquetas da igual
+        String invertidas = json.replace("[\"LABEL_0\", \"LABEL_1\"]", "[\"LABEL_1\", \"LABEL_0\"]");
+        predictor(new ByteArrayResource(invertidas.getBytes(StandardCharsets.UTF_8))).predecir(opaca(0x808080));
+    }
+}
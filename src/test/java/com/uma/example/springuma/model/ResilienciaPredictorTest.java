@@ -0,0 +1,217 @@
+package com.uma.example.springuma.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Circuito, bulkhead y reintentos de ResilienciaPredictor con un Predictor simulado que responde, falla o
+// se queda bloqueado hasta que el test lo suelta
+class ResilienciaPredictorTest {
+
+    private static final Map<String, Double> PUNTUACIONES = Map.of("LABEL_0", 0.9, "LABEL_1", 0.1);
+
+    private static class PredictorSimulado implements Predictor {
+
+        final AtomicInteger llamadas = new AtomicInteger();
+        volatile PrediccionException fallo;
+        volatile RuntimeException error;
+        volatile CountDownLatch bloqueo;
+        volatile CountDownLatch dentro = new CountDownLatch(1);
+
+        @Override
+        public Map<String, Double> predecir(byte[] imagen) throws PrediccionException {
+            llamadas.incrementAndGet();
+            dentro.countDown();
+            CountDownLatch esperar = bloqueo;
+            if (esperar != null) {
+                try {
+                    esperar.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (fallo != null) {
+                throw fallo;
+            }
+            if (error != null) {
+                throw error;
+            }
+            return PUNTUACIONES;
+        }
+
+        @Override
+        public String getModelo() {
+            return "simulado";
+        }
+    }
+
+    private final PredictorSimulado predictor = new PredictorSimulado();
+
+    @AfterEach
+    void soltar() {
+        CountDownLatch bloqueo = predictor.bloqueo;
+        if (bloqueo != null) {
+            bloqueo.countDown();
+        }
+    }
+
+    private static ResilienciaPredictor resiliencia(int fallos, long abiertoMs, int concurrentes, int reintentos) {
+        ResilienciaPredictor resiliencia = new ResilienciaPredictor();
+        ReflectionTestUtils.setField(resiliencia, "maxConcurrentes", concurrentes);
+        ReflectionTestUtils.setField(resiliencia, "esperaBulkheadMs", 50L);
+        ReflectionTestUtils.setField(resiliencia, "fallosParaAbrir", fallos);
+        ReflectionTestUtils.setField(resiliencia, "abiertoMs", abiertoMs);
+        ReflectionTestUtils.setField(resiliencia, "maxReintentos", reintentos);
+        ReflectionTestUtils.setField(resiliencia, "baseReintentoMs", 1L);
+        ReflectionTestUtils.setField(resiliencia, "maximoReintentoMs", 5L);
+        resiliencia.init();
+        return resiliencia;
+    }
+
+    private Map<String, Double> predecir(ResilienciaPredictor resiliencia) throws PrediccionException {
+        return resiliencia.ejecutar(() -> predictor.predecir(new byte[0]));
+    }
+
+    private PrediccionException fallar(ResilienciaPredictor resiliencia) {
+        return assertThrows(PrediccionException.class, () -> predecir(resiliencia));
+    }
+
+    // Una llamada en otro hilo que se queda dentro del predictor hasta soltar el bloqueo
+    private CompletableFuture<Map<String, Double>> bloquear(ResilienciaPredictor resiliencia) throws InterruptedException {
+        predictor.dentro = new CountDownLatch(1);
+        predictor.bloqueo = new CountDownLatch(1);
+        CompletableFuture<Map<String, Double>> enCurso = CompletableFuture.supplyAsync(() -> {
+            try {
+                return predecir(resiliencia);
+            } catch (PrediccionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(predictor.dentro.await(5, TimeUnit.SECONDS));
+        return enCurso;
+    }
+
+    @Test
+    @DisplayName("Tras N fallos seguidos el circuito se abre y falla sin llamar al predictor")
+    void fallosSeguidos_abrenElCircuito() {
+        ResilienciaPredictor resiliencia = resiliencia(3, 60_000, 10, 0);
+        predictor.error = new IllegalStateException("HTTP 500");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(PrediccionException.Tipo.ERROR_REMOTO, fallar(resiliencia).getTipo());
+        }
+        assertEquals(ResilienciaPredictor.EstadoCircuito.ABIERTO, resiliencia.getEstado());
+
+        PrediccionException rechazo = fallar(resiliencia);
+        assertEquals(PrediccionException.Tipo.NO_DISPONIBLE, rechazo.getTipo());
+        assertTrue(rechazo.getEsperaMs() > 0 && rechazo.getEsperaMs() <= 60_000);
+        assertEquals(3, predictor.llamadas.get());
+        assertEquals(1L, resiliencia.getEstadisticas().get("rechazadasCircuito"));
+    }
+
+    @Test
+    @DisplayName("Un exito entre fallos y las imagenes no validas no cuentan para abrir el circuito")
+    void falloAislado_oImagenNoValida_noAbreElCircuito() throws PrediccionException {
+        ResilienciaPredictor resiliencia = resiliencia(2, 60_000, 10, 0);
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.TIMEOUT, "sin respuesta");
+        assertEquals(PrediccionException.Tipo.TIMEOUT, fallar(resiliencia).getTipo());
+        predictor.fallo = null;
+        predecir(resiliencia);
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.TIMEOUT, "sin respuesta");
+        fallar(resiliencia);
+
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.IMAGEN_NO_VALIDA, "no es una imagen");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(PrediccionException.Tipo.IMAGEN_NO_VALIDA, fallar(resiliencia).getTipo());
+        }
+        assertEquals(ResilienciaPredictor.EstadoCircuito.CERRADO, resiliencia.getEstado());
+    }
+
+    @Test
+    @DisplayName("Pasado el tiempo abierto solo pasa una llamada de prueba; si va bien el circuito se cierra")
+    void semiabierto_unaSolaPrueba_cierraSiVaBien() throws Exception {
+        ResilienciaPredictor resiliencia = resiliencia(1, 50, 10, 0);
+        predictor.error = new IllegalStateException("HTTP 500");
+        fallar(resiliencia);
+        Thread.sleep(100);
+        assertEquals(ResilienciaPredictor.EstadoCircuito.SEMIABIERTO, resiliencia.getEstado());
+
+        predictor.error = null;
+        CompletableFuture<Map<String, Double>> prueba = bloquear(resiliencia);
+        PrediccionException rechazo = fallar(resiliencia);
+        assertEquals(PrediccionException.Tipo.NO_DISPONIBLE, rechazo.getTipo());
+        assertEquals(2, predictor.llamadas.get());
+
+        predictor.bloqueo.countDown();
+        assertEquals(PUNTUACIONES, prueba.get(5, TimeUnit.SECONDS));
+        assertEquals(ResilienciaPredictor.EstadoCircuito.CERRADO, resiliencia.getEstado());
+        assertEquals(PUNTUACIONES, predecir(resiliencia));
+    }
+
+    @Test
+    @DisplayName("Si la llamada de prueba falla el circuito vuelve a abrirse al momento")
+    void semiabierto_pruebaFalla_vuelveAAbrir() throws Exception {
+        ResilienciaPredictor resiliencia = resiliencia(3, 50, 10, 0);
+        predictor.error = new IllegalStateException("HTTP 500");
+        for (int i = 0; i < 3; i++) {
+            fallar(resiliencia);
+        }
+        Thread.sleep(100);
+
+        assertEquals(PrediccionException.Tipo.ERROR_REMOTO, fallar(resiliencia).getTipo());
+        assertEquals(ResilienciaPredictor.EstadoCircuito.ABIERTO, resiliencia.getEstado());
+        assertEquals(PrediccionException.Tipo.NO_DISPONIBLE, fallar(resiliencia).getTipo());
+        assertEquals(4, predictor.llamadas.get());
+    }
+
+    @Test
+    @DisplayName("Con el bulkhead lleno la llamada espera y falla con NO_DISPONIBLE sin llegar al predictor")
+    void bulkheadLleno_rechazaLaLlamada() throws Exception {
+        ResilienciaPredictor resiliencia = resiliencia(3, 60_000, 1, 0);
+        CompletableFuture<Map<String, Double>> ocupada = bloquear(resiliencia);
+
+        PrediccionException rechazo = fallar(resiliencia);
+        assertEquals(PrediccionException.Tipo.NO_DISPONIBLE, rechazo.getTipo());
+        assertEquals(1, predictor.llamadas.get());
+        assertEquals(1L, resiliencia.getEstadisticas().get("rechazadasBulkhead"));
+        assertEquals(1L, resiliencia.getEstadisticas().get("enCurso"));
+
+        predictor.bloqueo.countDown();
+        assertEquals(PUNTUACIONES, ocupada.get(5, TimeUnit.SECONDS));
+        // el rechazo no es un fallo del modelo
+        assertEquals(ResilienciaPredictor.EstadoCircuito.CERRADO, resiliencia.getEstado());
+        assertEquals(0L, resiliencia.getEstadisticas().get("enCurso"));
+    }
+
+    @Test
+    @DisplayName("Solo se reintentan los errores reintentables, hasta predictor.reintentos.maximo")
+    void erroresReintentables_seReintentan() throws PrediccionException {
+        ResilienciaPredictor resiliencia = resiliencia(10, 60_000, 10, 2);
+        Predictor cargando = new PredictorSimulado() {
+            @Override
+            public Map<String, Double> predecir(byte[] imagen) throws PrediccionException {
+                if (llamadas.incrementAndGet() <= 2) {
+                    throw new PrediccionException(PrediccionException.Tipo.NO_DISPONIBLE, "modelo cargando", true, 1, null);
+                }
+                return PUNTUACIONES;
+            }
+        };
+        assertEquals(PUNTUACIONES, resiliencia.ejecutar(() -> cargando.predecir(new byte[0])));
+        assertEquals(2L, resiliencia.getEstadisticas().get("reintentos"));
+
+        predictor.fallo = new PrediccionException(PrediccionException.Tipo.ERROR_REMOTO, "HTTP 400");
+        fallar(resiliencia);
+        assertEquals(1, predictor.llamadas.get());
+    }
+}
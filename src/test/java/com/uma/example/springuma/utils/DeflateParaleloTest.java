@@ -0,0 +1,131 @@
+package com.uma.example.springuma.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+// Deflate por bloques con contenidos por encima del umbral. DeflateParalelo se llama directamente porque
+// ImageUtils solo lo usa con mas de un nucleo (PoolCompresion.HILOS > 1); por ImageUtils se comprueba
+// ademas que el resultado sea el mismo formato sea cual sea el camino que tome en esta maquina
+class DeflateParaleloTest {
+
+    private static final int UMBRAL = 1024 * 1024;
+
+    private static final int[] NIVELES = {Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION};
+
+    // Aleatorio (no comprime), comprimible (texto con variaciones) y repetitivo, de tamanos que no son
+    // multiplo del bloque salvo uno
+    private static Map<String, byte[]> contenidos() {
+        Map<String, byte[]> contenidos = new LinkedHashMap<>();
+        byte[] aleatorio = new byte[UMBRAL + 12345];
+        new Random(1).nextBytes(aleatorio);
+        contenidos.put("aleatorio", aleatorio);
+
+        StringBuilder texto = new StringBuilder();
+        Random random = new Random(2);
+        while (texto.length() < 3 * UMBRAL) {
+            texto.append("paciente ").append(random.nextInt(1000)).append(" imagen ").append(random.nextInt(50)).append('\n');
+        }
+        contenidos.put("comprimible", texto.toString().getBytes(StandardCharsets.US_ASCII));
+
+        byte[] repetido = new byte[16 * DeflateParalelo.BLOQUE];
+        for (int i = 0; i < repetido.length; i++) {
+            repetido[i] = (byte) (i % 1000);
+        }
+        contenidos.put("repetido", repetido);
+        return contenidos;
+    }
+
+    // Un zlib normal: lo lee InflaterInputStream (que comprueba cabecera y adler32) y decompressImage
+    private static void assertZlib(String caso, byte[] datos, byte[] comprimido) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(comprimido))) {
+            assertArrayEquals(datos, in.readAllBytes(), caso);
+        }
+        assertArrayEquals(datos, ImageUtils.decompressImage(comprimido), caso);
+        assertArrayEquals(datos, ImageUtils.decompressImage(comprimido, datos.length), caso);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageUtils.decompressImage(new ByteArrayInputStream(comprimido), out);
+        assertArrayEquals(datos, out.toByteArray(), caso);
+    }
+
+    // A trozos crecientes, de modo que el umbral se cruza a mitad de una escritura
+    private static byte[] comprimirEnStreaming(OutputStream compresor, ByteArrayOutputStream salida, byte[] datos) throws IOException {
+        try (compresor) {
+            int escritos = 0;
+            int trozo = 1;
+            while (escritos < datos.length) {
+                int n = Math.min(trozo, datos.length - escritos);
+                if (n == 1) {
+                    compresor.write(datos[escritos]);
+                } else {
+                    compresor.write(datos, escritos, n);
+                }
+                escritos += n;
+                trozo = Math.min(trozo * 2 + 1, 300 * 1024);
+            }
+        }
+        return salida.toByteArray();
+    }
+
+    @Test
+    @DisplayName("Deflate en paralelo produce un zlib que se descomprime con los mismos bytes")
+    void comprimir_porEncimaDelUmbral_zlibValido() throws IOException {
+        for (Map.Entry<String, byte[]> contenido : contenidos().entrySet()) {
+            byte[] datos = contenido.getValue();
+            for (int nivel : NIVELES) {
+                String caso = contenido.getKey() + " nivel " + nivel;
+                byte[] comprimido = DeflateParalelo.comprimir(datos, datos.length, nivel);
+                assertZlib(caso, datos, comprimido);
+                if (!contenido.getKey().equals("aleatorio")) {
+                    assertTrue(comprimido.length < datos.length / 4, caso);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("El compresor en streaming pasa a bloques al superar el umbral y el resultado es el mismo zlib")
+    void compresor_cruzaElUmbral_zlibValido() throws IOException {
+        for (Map.Entry<String, byte[]> contenido : contenidos().entrySet()) {
+            byte[] datos = contenido.getValue();
+            ByteArrayOutputStream salida = new ByteArrayOutputStream();
+            byte[] comprimido = comprimirEnStreaming(DeflateParalelo.compresor(salida, Deflater.DEFAULT_COMPRESSION, UMBRAL),
+                salida, datos);
+            assertZlib(contenido.getKey(), datos, comprimido);
+        }
+        // por debajo del umbral se comprime de una vez en un hilo
+        byte[] pequeno = "por debajo del umbral".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        assertZlib("pequeno", pequeno,
+            comprimirEnStreaming(DeflateParalelo.compresor(salida, Deflater.DEFAULT_COMPRESSION, UMBRAL), salida, pequeno));
+    }
+
+    @Test
+    @DisplayName("compressImage y compresor de ImageUtils con deflate y contenidos grandes se descomprimen igual")
+    void imageUtilsDeflate_contenidosGrandes_idaYVuelta() throws IOException {
+        for (Map.Entry<String, byte[]> contenido : contenidos().entrySet()) {
+            byte[] datos = contenido.getValue();
+            assertZlib(contenido.getKey(), datos, ImageUtils.compressImage(datos, CodecImagen.DEFLATE, Deflater.BEST_SPEED));
+            assertZlib(contenido.getKey(), datos, ImageUtils.compressImage(datos));
+
+            ByteArrayOutputStream salida = new ByteArrayOutputStream();
+            byte[] comprimido = comprimirEnStreaming(ImageUtils.compresor(salida, CodecImagen.DEFLATE, Deflater.BEST_SPEED),
+                salida, datos);
+            assertZlib(contenido.getKey(), datos, comprimido);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.uma.example.springuma.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+// Ida y vuelta del formato por bloques con bloques pequenos, para tener muchos sin contenidos grandes
+class FormatoBloquesTest {
+
+    private static final int BLOQUE = 1024;
+
+    // Bloques que comprimen y bloques que no (se guardan tal cual), mezclados
+    private static byte[] datos(int tamano) {
+        byte[] datos = new byte[tamano];
+        Random random = new Random(tamano);
+        for (int i = 0; i < tamano; i++) {
+            datos[i] = (i / BLOQUE) % 2 == 0 ? (byte) (i % 7) : (byte) random.nextInt();
+        }
+        return datos;
+    }
+
+    // Escrito a trozos de tamanos que no coinciden con el bloque
+    private static byte[] comprimir(byte[] datos, CodecImagen codec) throws IOException {
+        ByteArrayOutputStream guardado = new ByteArrayOutputStream();
+        int nivel = codec == CodecImagen.ZSTD ? 3 : Deflater.DEFAULT_COMPRESSION;
+        try (OutputStream compresor = FormatoBloques.compresor(guardado, codec, nivel, BLOQUE)) {
+            int escritos = 0;
+            int trozo = 1;
+            while (escritos < datos.length) {
+                int n = Math.min(trozo, datos.length - escritos);
+                compresor.write(datos, escritos, n);
+                escritos += n;
+                trozo = trozo * 3 + 1;
+            }
+        }
+        return guardado.toByteArray();
+    }
+
+    private static FormatoBloques.Lector lector(byte[] guardado) {
+        return posicion -> new ByteArrayInputStream(guardado, (int) posicion, guardado.length - (int) posicion);
+    }
+
+    private static void assertIdaYVuelta(byte[] datos, byte[] guardado) throws IOException {
+        assertArrayEquals(datos, ImageUtils.decompressImage(guardado, datos.length));
+        assertArrayEquals(datos, ImageUtils.decompressImage(guardado));
+        try (InputStream descomprimido = ImageUtils.abrirDescomprimido(new ByteArrayInputStream(guardado))) {
+            assertArrayEquals(datos, descomprimido.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Varios bloques con el ultimo incompleto se descomprimen con los mismos bytes")
+    void compresorVariosBloques_ultimoIncompleto_descomprimeIgual() throws IOException {
+        for (CodecImagen codec : new CodecImagen[] {CodecImagen.DEFLATE, CodecImagen.ZSTD}) {
+            byte[] datos = datos(20 * BLOQUE + 333);
+            byte[] guardado = comprimir(datos, codec);
+
+            assertEquals(CodecImagen.BLOQUES.getCabecera(), guardado[0] & 0xff);
+            FormatoBloques.Indice indice = FormatoBloques.leerIndice(lector(guardado), guardado.length);
+            assertEquals(BLOQUE, indice.tamanoBloque());
+            assertEquals(datos.length, indice.tamano());
+            assertEquals(21, indice.posiciones().length);
+            assertIdaYVuelta(datos, guardado);
+        }
+    }
+
+    @Test
+    @DisplayName("Un rango que cruza bloques solo devuelve sus bytes, tambien hasta el final del contenido")
+    void copiarRango_variosBloques_devuelveElRango() throws IOException {
+        byte[] datos = datos(10 * BLOQUE + 100);
+        byte[] guardado = comprimir(datos, CodecImagen.DEFLATE);
+        FormatoBloques.Indice indice = FormatoBloques.leerIndice(lector(guardado), guardado.length);
+
+        long[][] rangos = {{BLOQUE - 10, 20}, {BLOQUE / 2, 3L * BLOQUE}, {2L * BLOQUE, BLOQUE},
+            {9L * BLOQUE + 50, BLOQUE + 50}, {0, datos.length}, {datos.length - 1L, 1}};
+        for (long[] rango : rangos) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FormatoBloques.copiarRango(indice, lector(guardado), rango[0], rango[1], out);
+            assertArrayEquals(Arrays.copyOfRange(datos, (int) rango[0], (int) (rango[0] + rango[1])), out.toByteArray(),
+                "Rango " + rango[0] + "+" + rango[1]);
+        }
+        assertThrows(EOFException.class,
+            () -> FormatoBloques.copiarRango(indice, lector(guardado), datos.length - 10L, 11, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    @DisplayName("Sin datos, o con un solo bloque justo, se guarda en el formato de un solo bloque")
+    void compresorVacioOUnBloque_formatoDeUnBloque() throws IOException {
+        for (int tamano : new int[] {0, 1, BLOQUE}) {
+            byte[] datos = datos(tamano);
+            byte[] guardado = comprimir(datos, CodecImagen.ZSTD);
+
+            assertNotEquals(CodecImagen.BLOQUES.getCabecera(), guardado[0] & 0xff);
+            assertIdaYVuelta(datos, guardado);
+        }
+        byte[] unoMas = datos(BLOQUE + 1);
+        byte[] guardado = comprimir(unoMas, CodecImagen.ZSTD);
+        assertEquals(CodecImagen.BLOQUES.getCabecera(), guardado[0] & 0xff);
+        assertIdaYVuelta(unoMas, guardado);
+    }
+}